@@ -0,0 +1,85 @@
+#!/bin/bash -e
+#
+# Starts or stops one OSIAM stack, i.e. a database and an OSIAM container, per
+# failsafe fork of the `parallel` profile. The stacks reuse the images built by
+# the docker-maven-plugin and the LDAP container of the default stack.
+#
+# Fork N serves OSIAM on port <osiam port prefix>N and its database on port
+# <database port prefix>N, which limits the number of forks to 9.
+#
+# usage: parallel-stacks.sh start|stop <forks> <database> <osiam host> <osiam port> \
+#            <osiam port prefix> <database port prefix> <image prefix>
+
+COMMAND=$1
+FORKS=$2
+DATABASE=$3
+OSIAM_HOST=$4
+OSIAM_PORT=$5
+OSIAM_PORT_PREFIX=$6
+DATABASE_PORT_PREFIX=$7
+IMAGE_PREFIX=$8
+
+case $DATABASE in
+    postgres)
+        DATABASE_PORT=5432
+        ;;
+    mysql)
+        DATABASE_PORT=3306
+        ;;
+    *)
+        echo "Unsupported database: $DATABASE" >&2
+        exit 1
+        ;;
+esac
+
+if [ "$FORKS" -lt 1 ] || [ "$FORKS" -gt 9 ]; then
+    echo "The number of forks must be between 1 and 9, but was $FORKS" >&2
+    exit 1
+fi
+
+start() {
+    for FORK in $(seq 1 "$FORKS"); do
+        docker run -d --name "${IMAGE_PREFIX}_${DATABASE}_fork${FORK}" \
+            -p "${DATABASE_PORT_PREFIX}${FORK}:${DATABASE_PORT}" \
+            "${IMAGE_PREFIX}_${DATABASE}" > /dev/null
+        docker run -d --name "${IMAGE_PREFIX}_osiam_fork${FORK}" \
+            --link "${IMAGE_PREFIX}_${DATABASE}_fork${FORK}:${DATABASE}" \
+            --link "${IMAGE_PREFIX}_ldap:ldap" \
+            -p "${OSIAM_PORT_PREFIX}${FORK}:${OSIAM_PORT}" \
+            "${IMAGE_PREFIX}_osiam" > /dev/null
+    done
+
+    for FORK in $(seq 1 "$FORKS"); do
+        URL="http://${OSIAM_HOST}:${OSIAM_PORT_PREFIX}${FORK}/login"
+        for ATTEMPT in $(seq 1 90); do
+            if curl -s "$URL" | grep -q form-signin; then
+                break
+            fi
+            if [ "$ATTEMPT" -eq 90 ]; then
+                echo "OSIAM of fork $FORK did not start within 90s" >&2
+                exit 1
+            fi
+            sleep 1
+        done
+    done
+}
+
+stop() {
+    for FORK in $(seq 1 "$FORKS"); do
+        docker rm -f "${IMAGE_PREFIX}_osiam_fork${FORK}" "${IMAGE_PREFIX}_${DATABASE}_fork${FORK}" > /dev/null 2>&1 || true
+    done
+}
+
+case $COMMAND in
+    start)
+        stop
+        start
+        ;;
+    stop)
+        stop
+        ;;
+    *)
+        echo "usage: $0 start|stop <forks> <database> <osiam host> <osiam port> <osiam port prefix> <database port prefix> <image prefix>" >&2
+        exit 1
+        ;;
+esac
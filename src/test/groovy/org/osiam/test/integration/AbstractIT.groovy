@@ -27,25 +27,43 @@ import org.dbunit.database.DatabaseDataSourceConnection
 import org.dbunit.database.IDatabaseConnection
 import org.dbunit.dataset.IDataSet
 import org.dbunit.dataset.xml.FlatXmlDataSetBuilder
-import org.dbunit.operation.DatabaseOperation
+import org.osiam.client.AccessTokenCache
+import org.osiam.client.DataSets
+import org.osiam.client.DatabaseResetOperationLookup
+import org.osiam.client.ImmutableDataSet
 import org.osiam.client.OsiamConnector
+import org.osiam.client.SyntheticDataSet
 import org.osiam.client.oauth.AccessToken
 import org.osiam.client.oauth.Scope
 import org.springframework.context.ApplicationContext
+import org.springframework.context.ConfigurableApplicationContext
 import org.springframework.context.support.ClassPathXmlApplicationContext
+import spock.lang.Shared
 import spock.lang.Specification
 
 import javax.sql.DataSource
 
+import static com.github.springtestdbunit.annotation.DatabaseOperation.CLEAN_INSERT
+import static com.github.springtestdbunit.annotation.DatabaseOperation.DELETE_ALL
+
 /**
  * Base class for integration tests.
  */
+@ImmutableDataSetSupport
 abstract class AbstractIT extends Specification {
 
     private static final String CLIENT_ID = 'example-client'
     private static final String CLIENT_SECRET = 'secret'
     protected static final String OSIAM_ENDPOINT
     protected static final OsiamConnector OSIAM_CONNECTOR
+    protected static final AccessTokenCache ACCESS_TOKEN_CACHE
+
+    private static final DatabaseResetOperationLookup DATABASE_OPERATIONS = new DatabaseResetOperationLookup()
+
+    private static ConfigurableApplicationContext applicationContext
+
+    @Shared
+    private String immutableDataSetChecksum
 
     protected AccessToken accessToken
 
@@ -58,12 +76,70 @@ abstract class AbstractIT extends Specification {
                 .setClientId(CLIENT_ID)
                 .setClientSecret(CLIENT_SECRET)
                 .build()
+        ACCESS_TOKEN_CACHE = AccessTokenCache.shared(OSIAM_CONNECTOR, CLIENT_ID)
+    }
+
+    /**
+     * Returns the Spring context shared by all specifications. It is created on first use and closed when the JVM
+     * shuts down, like the context cache of the Spring test framework does for the JUnit based tests.
+     */
+    protected static synchronized ApplicationContext getApplicationContext() {
+        if (applicationContext == null) {
+            applicationContext = new ClassPathXmlApplicationContext('context.xml')
+            applicationContext.registerShutdownHook()
+        }
+        applicationContext
+    }
+
+    /**
+     * Seeds the immutable data set before the first feature, see {@link ImmutableDataSetExtension}.
+     */
+    void setupImmutableDataSet() {
+        seedImmutableDataSet(getClass().getAnnotation(ImmutableDataSet))
+    }
+
+    /**
+     * Provides the access token of a feature of a specification with an immutable data set, see
+     * {@link ImmutableDataSetExtension}.
+     */
+    void setupImmutableDataSetFeature() {
+        accessToken = ACCESS_TOKEN_CACHE.retrieveAccessToken('marissa', 'koala', Scope.ADMIN)
     }
 
     def setupDatabase(String seedFileName) {
+        seedDatabase(seedFileName)
+        accessToken = ACCESS_TOKEN_CACHE.retrieveAccessToken('marissa', 'koala', Scope.ADMIN)
+    }
+
+    def createAccessToken(String userName, String password) {
+        OsiamConnector osiamConnector = new OsiamConnector.Builder()
+                .withEndpoint(OSIAM_ENDPOINT)
+                .setClientId(CLIENT_ID)
+                .setClientSecret(CLIENT_SECRET)
+                .build()
+        osiamConnector.retrieveAccessToken(userName, password, Scope.ADMIN)
+    }
+
+    def cleanup() {
+        if (immutableDataSetChecksum == null) {
+            tearDownDatabase()
+        } else if (databaseChecksum() != immutableDataSetChecksum) {
+            // seed again, so that only the offending feature fails
+            seedImmutableDataSet(getClass().getAnnotation(ImmutableDataSet))
+            throw new AssertionError("${getClass().simpleName}.${specificationContext.currentIteration.name} " +
+                    'modified the immutable data set of its specification')
+        }
+    }
 
-        // Load Spring context configuration.
-        ApplicationContext ac = new ClassPathXmlApplicationContext('context.xml')
+    /**
+     * Removes the immutable data set after the last feature, see {@link ImmutableDataSetExtension}.
+     */
+    void tearDownImmutableDataSet() {
+        tearDownDatabase()
+    }
+
+    private void seedDatabase(String seedFileName) {
+        ApplicationContext ac = getApplicationContext()
         // Establish database connection.
         IDatabaseConnection connection = (IDatabaseConnection) ac.getBean('dbUnitDatabaseConnection')
         // Load the initialization data from file.
@@ -71,27 +147,37 @@ abstract class AbstractIT extends Specification {
 
         // Insert initialization data into database.
         try {
-            DatabaseOperation.CLEAN_INSERT.execute(connection, initData)
+            DATABASE_OPERATIONS.get(CLEAN_INSERT).execute(connection, initData)
         }
         finally {
             connection.close()
         }
+    }
 
-        accessToken = OSIAM_CONNECTOR.retrieveAccessToken('marissa', 'koala', Scope.ADMIN)
+    private void seedImmutableDataSet(ImmutableDataSet immutableDataSet) {
+        seedDatabase(immutableDataSet.value())
+        if (isSynthetic()) {
+            new SyntheticDataSet(SyntheticDataSet.scale()).insert((DataSource) getApplicationContext().getBean('dataSource'))
+        }
+        immutableDataSetChecksum = databaseChecksum()
     }
 
-    def createAccessToken(String userName, String password) {
-        OsiamConnector osiamConnector = new OsiamConnector.Builder()
-                .withEndpoint(OSIAM_ENDPOINT)
-                .setClientId(CLIENT_ID)
-                .setClientSecret(CLIENT_SECRET)
-                .build()
-        osiamConnector.retrieveAccessToken(userName, password, Scope.ADMIN)
+    private boolean isSynthetic() {
+        getClass().getAnnotation(ImmutableDataSet)?.synthetic() && SyntheticDataSet.scale() > 0
     }
 
-    def cleanup() {
-        // Load Spring context configuration.
-        ApplicationContext ac = new ClassPathXmlApplicationContext('context.xml')
+    private String databaseChecksum() {
+        IDatabaseConnection connection = (IDatabaseConnection) getApplicationContext().getBean('dbUnitDatabaseConnection')
+        try {
+            isSynthetic() ? DataSets.rowCounts(connection) : DataSets.checksum(connection)
+        }
+        finally {
+            connection.close()
+        }
+    }
+
+    private void tearDownDatabase() {
+        ApplicationContext ac = getApplicationContext()
         // Get dataSource configuration.
         DataSource dataSource = (DataSource) ac.getBean('dataSource')
         // Establish database connection.
@@ -102,7 +188,7 @@ abstract class AbstractIT extends Specification {
 
         // Insert initialization data into database.
         try {
-            DatabaseOperation.DELETE_ALL.execute(connection, initData)
+            DATABASE_OPERATIONS.get(DELETE_ALL).execute(connection, initData)
         }
         finally {
             connection.close()
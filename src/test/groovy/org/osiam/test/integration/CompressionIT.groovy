@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.test.integration
+
+import groovyx.net.http.ContentEncoding
+import groovyx.net.http.ContentType
+import groovyx.net.http.HTTPBuilder
+import groovyx.net.http.Method
+import org.osiam.client.PooledHttpClient
+import org.osiam.client.query.Query
+import org.osiam.client.query.QueryBuilder
+import spock.lang.Shared
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+
+/**
+ * Checks that OSIAM compresses search responses if the client asks for it with {@code Accept-Encoding} and reports
+ * the bytes saved on the wire.
+ */
+class CompressionIT extends AbstractIT {
+
+    private static final Path REPORT = Paths.get('target/failsafe-reports/compression.txt')
+
+    @Shared
+    private List<String> report = []
+
+    def setup() {
+        setupDatabase('database_seed.xml')
+    }
+
+    @Unroll
+    def 'REGT-COMP-#testCase: A search on #requestPath with accepted encodings #acceptedEncodings should return HTTP status code 200 and content encoding #expectedEncoding.'() {
+        given: "a valid access token"
+
+        when: "a request is sent"
+        def http = new HTTPBuilder(OSIAM_ENDPOINT)
+        http.setContentEncoding(*acceptedEncodings)
+
+        def responseStatusCode
+        def responseEncoding
+        def totalResults
+
+        http.request(Method.GET, ContentType.JSON) { req ->
+            uri.path = OSIAM_ENDPOINT + requestPath
+            headers."Authorization" = "Bearer " + accessToken.getToken()
+
+            response.success = { resp, json ->
+                responseStatusCode = resp.statusLine.statusCode
+                responseEncoding = resp.getFirstHeader('Content-Encoding')?.value
+                totalResults = json.totalResults
+            }
+
+            response.failure = { resp ->
+                responseStatusCode = resp.statusLine.statusCode
+            }
+        }
+
+        then: "the response should be compressed as negotiated and still be readable"
+        responseStatusCode == 200
+        responseEncoding == expectedEncoding
+        totalResults > 0
+
+        where:
+        testCase | requestPath | acceptedEncodings             | expectedEncoding
+        'a'      | '/Users'    | [ContentEncoding.Type.GZIP]   | 'gzip'
+        'b'      | '/Users'    | []                            | null
+        'c'      | '/Groups'   | [ContentEncoding.Type.GZIP]   | 'gzip'
+        'd'      | '/Groups'   | []                            | null
+    }
+
+    @Unroll
+    def 'REGT-COMP-BYTES-#testCase: A compressed search on #endpoint should need fewer bytes on the wire than an uncompressed one.'() {
+        given: "a client with and a client without compression"
+        PooledHttpClient plainClient = new PooledHttpClient.Builder(OSIAM_ENDPOINT).setCompression(false).build()
+        PooledHttpClient gzipClient = new PooledHttpClient.Builder(OSIAM_ENDPOINT).setCompression(true).build()
+        Query query = new QueryBuilder().count(100).build()
+
+        when: "both clients search"
+        plainClient."$searchMethod"(query, accessToken)
+        gzipClient."$searchMethod"(query, accessToken)
+        report << String.format('%-7s %8d bytes uncompressed, %8d bytes gzip on the wire (%.1f%% less)', endpoint,
+                plainClient.wireBytes, gzipClient.wireBytes,
+                100.0 * (plainClient.wireBytes - gzipClient.wireBytes) / plainClient.wireBytes)
+
+        then: "both receive the same response, but the compressed one takes fewer bytes on the wire"
+        gzipClient.receivedBytes == plainClient.receivedBytes
+        gzipClient.wireBytes < plainClient.wireBytes
+
+        cleanup:
+        plainClient?.close()
+        gzipClient?.close()
+
+        where:
+        testCase | endpoint  | searchMethod
+        'a'      | '/Users'  | 'searchUsers'
+        'b'      | '/Groups' | 'searchGroups'
+    }
+
+    def cleanupSpec() {
+        report.each { println it }
+        Files.createDirectories(REPORT.parent)
+        Files.write(REPORT, report)
+    }
+}
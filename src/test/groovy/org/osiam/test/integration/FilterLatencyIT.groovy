@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.test.integration
+
+import groovyx.net.http.ContentType
+import groovyx.net.http.HTTPBuilder
+import groovyx.net.http.Method
+import org.HdrHistogram.Histogram
+import org.osiam.client.ImmutableDataSet
+import org.osiam.client.SyntheticDataSet
+import spock.lang.Requires
+import spock.lang.Shared
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs the filter matrix of REGT-002 in {@link ControllerIT} against a synthetic data set of {@code -Ddataset.scale}
+ * users and fails if the 95th percentile of the latency of a filter exceeds its budget.
+ * <p>
+ * The budget in milliseconds is set with {@code -Dfilter.latency.budget} and can be overridden per operator, e.g.
+ * {@code -Dfilter.latency.budget.co=500}. The measured latencies of all filters are written to
+ * {@code -Dfilter.latency.report}.
+ */
+@Requires({ SyntheticDataSet.scale() > 0 })
+@ImmutableDataSet(value = '/database_seed_minimal.xml', synthetic = true)
+class FilterLatencyIT extends AbstractIT {
+
+    private static final int WARMUP_ITERATIONS = Integer.getInteger('filter.latency.warmup', 5)
+    private static final int ITERATIONS = Integer.getInteger('filter.latency.iterations', 20)
+    private static final long DEFAULT_BUDGET = Long.getLong('filter.latency.budget', 250)
+    private static final Path REPORT = Paths.get(System.getProperty('filter.latency.report',
+            'target/failsafe-reports/filter-latency.txt'))
+    private static final String EXTENSION = SyntheticDataSet.EXTENSION_URN
+
+    @Shared
+    private List<String> report = []
+
+    // reused by all requests, so that the latencies don't include creating a client and connecting
+    @Shared
+    private HTTPBuilder http = new HTTPBuilder(OSIAM_ENDPOINT)
+
+    @Unroll
+    def 'REGT-002-PERF-#testCase: A search on the Users endpoint with search string #searchString should stay within the latency budget.'() {
+        given: "the latency budget of the operator"
+        long budget = Long.getLong("filter.latency.budget.$operator", DEFAULT_BUDGET)
+        Histogram latencies = new Histogram(3)
+        Set<Integer> responseStatusCodes = []
+
+        when: "the request is sent repeatedly"
+        WARMUP_ITERATIONS.times {
+            search(searchString)
+        }
+        ITERATIONS.times {
+            long start = System.nanoTime()
+            responseStatusCodes << search(searchString)
+            latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start))
+        }
+        long p95 = TimeUnit.MICROSECONDS.toMillis(latencies.getValueAtPercentile(95))
+        report << String.format('%-4s %-10s %-3s %8.1f %8.1f %8.1f %8d  %s', testCase, attributeType, operator,
+                latencies.getValueAtPercentile(50) / 1000.0, latencies.getValueAtPercentile(95) / 1000.0,
+                latencies.maxValue / 1000.0, budget, searchString)
+
+        then: "the 95th percentile of the latency should not exceed the budget"
+        responseStatusCodes == [200] as Set
+        p95 <= budget
+
+        where:
+        testCase | attributeType | operator | searchString
+        'a'      | 'String'      | 'eq'     | 'userName eq "synthetic0000042"'
+        'b'      | 'String'      | 'co'     | 'userName co "00042"'
+        'c'      | 'String'      | 'sw'     | 'userName sw "synthetic00001"'
+        'd'      | 'String'      | 'pr'     | 'userName pr'
+        'e'      | 'String'      | 'gt'     | 'userName gt "synthetic0500000"'
+        'f'      | 'String'      | 'ge'     | 'userName ge "synthetic0500000"'
+        'g'      | 'String'      | 'lt'     | 'userName lt "synthetic0000100"'
+        'h'      | 'String'      | 'le'     | 'userName le "synthetic0000100"'
+        'i'      | 'Enum'        | 'eq'     | 'emails.type eq "work"'
+        'l'      | 'Enum'        | 'pr'     | 'emails.type pr'
+        'q'      | 'boolean'     | 'eq'     | 'active eq "true"'
+        't'      | 'boolean'     | 'pr'     | 'active pr'
+        'ma'     | 'Date'        | 'eq'     | 'meta.created eq "2014-01-01T00:00:00.000"'
+        'mb'     | 'Date'        | 'gt'     | 'meta.created gt "2017-01-01T00:00:00.000"'
+        'mc'     | 'Date'        | 'lt'     | 'meta.created lt "2010-02-01T00:00:00.000"'
+        'na'     | 'Complex'     | 'eq'     | 'name.familyName eq "Meyer"'
+        'nb'     | 'Complex'     | 'co'     | 'name.familyName co "mann"'
+        'ea'     | 'Multi'       | 'co'     | 'emails.value co "00042@"'
+        'eb'     | 'Multi'       | 'sw'     | 'emails.value sw "synthetic00001"'
+        'xa'     | 'Extension'   | 'eq'     | "${EXTENSION}.gender eq \"diverse\""
+        'xb'     | 'Extension'   | 'co'     | "${EXTENSION}.gender co \"male\""
+        'xc'     | 'Extension'   | 'gt'     | "${EXTENSION}.age gt \"60\""
+        'xd'     | 'Extension'   | 'lt'     | "${EXTENSION}.birthday lt \"1970-01-01T00:00:00.000Z\""
+    }
+
+    def cleanupSpec() {
+        // the synthetic data set is removed afterwards by the ImmutableDataSetExtension
+        http.shutdown()
+        writeReport()
+    }
+
+    private void writeReport() {
+        Files.createDirectories(REPORT.parent)
+        Files.write(REPORT, ["filter latencies in ms at ${SyntheticDataSet.scale()} users, ${ITERATIONS} iterations".toString(),
+                             String.format('%-4s %-10s %-3s %8s %8s %8s %8s  %s', 'case', 'type', 'op', 'p50', 'p95', 'max',
+                                     'budget', 'filter')] + report)
+    }
+
+    private int search(String searchString) {
+        def responseStatusCode
+
+        http.request(Method.GET, ContentType.JSON) { req ->
+            uri.path = OSIAM_ENDPOINT + '/Users'
+            uri.query = [filter: searchString, count: 10]
+            headers.'Authorization' = 'Bearer ' + accessToken.getToken()
+
+            response.success = { resp, json ->
+                responseStatusCode = resp.statusLine.statusCode
+            }
+
+            response.failure = { resp ->
+                responseStatusCode = resp.statusLine.statusCode
+            }
+        }
+        responseStatusCode
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.osiam.test.integration
+
+import org.osiam.client.ImmutableDataSet
+import org.spockframework.runtime.extension.AbstractAnnotationDrivenExtension
+import org.spockframework.runtime.extension.IMethodInterceptor
+import org.spockframework.runtime.extension.IMethodInvocation
+import org.spockframework.runtime.model.SpecInfo
+
+/**
+ * Hooks the immutable data set of a specification into its lifecycle with interceptors instead of fixture methods of
+ * {@link AbstractIT}. Spock calls the fixture methods of every class level by name, so a specification declaring its
+ * own {@code setup()} or {@code cleanupSpec()} would shadow those of the base class.
+ */
+class ImmutableDataSetExtension extends AbstractAnnotationDrivenExtension<ImmutableDataSetSupport> {
+
+    @Override
+    void visitSpecAnnotation(ImmutableDataSetSupport annotation, SpecInfo spec) {
+        // the annotation is declared on AbstractIT, but @ImmutableDataSet on its subclasses
+        SpecInfo bottomSpec = spec.bottomSpec
+        if (!bottomSpec.reflection.isAnnotationPresent(ImmutableDataSet)) {
+            return
+        }
+        bottomSpec.addSetupSpecInterceptor({ IMethodInvocation invocation ->
+            ((AbstractIT) invocation.sharedInstance).setupImmutableDataSet()
+            invocation.proceed()
+        } as IMethodInterceptor)
+        bottomSpec.addSetupInterceptor({ IMethodInvocation invocation ->
+            ((AbstractIT) invocation.instance).setupImmutableDataSetFeature()
+            invocation.proceed()
+        } as IMethodInterceptor)
+        bottomSpec.addCleanupSpecInterceptor({ IMethodInvocation invocation ->
+            try {
+                invocation.proceed()
+            } finally {
+                ((AbstractIT) invocation.sharedInstance).tearDownImmutableDataSet()
+            }
+        } as IMethodInterceptor)
+    }
+}
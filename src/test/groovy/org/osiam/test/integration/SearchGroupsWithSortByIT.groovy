@@ -23,6 +23,7 @@
 
 package org.osiam.test.integration
 
+import org.osiam.client.ImmutableDataSet
 import org.osiam.client.query.Query
 import org.osiam.client.query.QueryBuilder
 import org.osiam.resources.scim.Group
@@ -30,12 +31,9 @@ import org.osiam.resources.scim.SCIMSearchResult
 
 import spock.lang.Unroll
 
+@ImmutableDataSet('/database_seeds/SearchGroupsWithSortByIT/database_seed.xml')
 class SearchGroupsWithSortByIT extends AbstractIT {
 
-    def setup() {
-        setupDatabase('/database_seeds/SearchGroupsWithSortByIT/database_seed.xml')
-    }
-
     @Unroll
     def 'searching for a Group with sortBy field set to #sortBy and default sort order works'() {
         given:
@@ -23,6 +23,7 @@
 
 package org.osiam.test.integration
 
+import org.osiam.client.ImmutableDataSet
 import org.osiam.client.query.Query
 import org.osiam.client.query.QueryBuilder
 import org.osiam.resources.scim.SCIMSearchResult
@@ -30,12 +31,9 @@ import org.osiam.resources.scim.User
 
 import spock.lang.Unroll
 
+@ImmutableDataSet('/database_seeds/SearchUsersWithSortByIT/database_seed.xml')
 class SearchUsersWithSortByIT extends AbstractIT {
 
-    def setup() {
-        setupDatabase('/database_seeds/SearchUsersWithSortByIT/database_seed.xml')
-    }
-
     @Unroll
     def 'searching for all Users with sortBy field set to #sortBy and default sort order should work'() {
         given:
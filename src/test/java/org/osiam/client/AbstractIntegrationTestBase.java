@@ -23,12 +23,18 @@
 
 package org.osiam.client;
 
+import com.github.springtestdbunit.annotation.DbUnitConfiguration;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.client.RequestEntityProcessing;
+import org.glassfish.jersey.client.filter.EncodingFeature;
 import org.glassfish.jersey.jackson.JacksonFeature;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.joda.time.format.ISODateTimeFormat;
 import org.osiam.client.oauth.AccessToken;
+import org.osiam.client.query.Query;
+import org.osiam.resources.scim.SCIMSearchResult;
+import org.osiam.resources.scim.User;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
@@ -36,6 +42,7 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.TimeZone;
 
+@DbUnitConfiguration(databaseOperationLookup = DatabaseResetOperationLookup.class)
 public abstract class AbstractIntegrationTestBase {
 
     protected static final String VALID_USER_ID = "834b410a-943b-4c80-817a-4465aed037bc";
@@ -55,11 +62,9 @@ public abstract class AbstractIntegrationTestBase {
             .setClientRedirectUri("http://localhost:5000/oauth2")
             .build();
 
-    protected static final Client CLIENT = ClientBuilder.newClient(new ClientConfig()
-            .register(JacksonFeature.class)
-            .property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.BUFFERED)
-            .property(ClientProperties.CONNECT_TIMEOUT, 5000)
-            .property(ClientProperties.READ_TIMEOUT, 10000));
+    protected static final AccessTokenCache ACCESS_TOKEN_CACHE = AccessTokenCache.shared(OSIAM_CONNECTOR, CLIENT_ID);
+
+    protected static final Client CLIENT = ClientBuilder.newClient(clientConfig());
 
     static {
         OsiamConnector.setConnectTimeout(Integer.parseInt(System.getProperty("connector.timeout", "-1")));
@@ -68,6 +73,13 @@ public abstract class AbstractIntegrationTestBase {
 
     protected AccessToken accessToken;
 
+    /**
+     * Searches users with {@link #OSIAM_CONNECTOR} and captures the query plans, if enabled for the test class.
+     */
+    protected SCIMSearchResult<User> searchUsers(Query query) {
+        return QueryPlanCapture.capture(query, () -> OSIAM_CONNECTOR.searchUsers(query, accessToken));
+    }
+
     protected void givenAnInvalidAccessToken() {
         accessToken = new AccessToken.Builder(AbstractIntegrationTestBase.INVALID_ID).build();
     }
@@ -84,4 +96,17 @@ public abstract class AbstractIntegrationTestBase {
         calendar.set(year, month, date, hourOfDay, minute, second);
         return calendar.getTime();
     }
+
+    private static ClientConfig clientConfig() {
+        ClientConfig clientConfig = new ClientConfig()
+                .register(JacksonFeature.class)
+                .property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.BUFFERED)
+                .property(ClientProperties.CONNECT_TIMEOUT, 5000)
+                .property(ClientProperties.READ_TIMEOUT, 10000);
+        if (Boolean.getBoolean("connector.gzip")) {
+            // sends Accept-Encoding: gzip and decompresses the responses while they are read
+            clientConfig.register(new EncodingFeature(GZipEncoder.class));
+        }
+        return clientConfig;
+    }
 }
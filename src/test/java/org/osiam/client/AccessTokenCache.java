@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.osiam.client;
+
+import org.osiam.client.exception.OsiamClientException;
+import org.osiam.client.oauth.AccessToken;
+import org.osiam.client.oauth.Scope;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches access tokens per client, user and scope, so that tests don't have to perform a full grant for every test
+ * method.
+ * <p>
+ * A cached token is handed out until it is expired or revoked. Tokens that are about to expire are refreshed with
+ * their refresh token.
+ * <p>
+ * The JUnit tests and the Spock specifications use the {@link #shared(OsiamConnector, String) shared} cache. It is
+ * cleared whenever {@link DatabaseResetOperationLookup} seeds a data set, so a token lives only as long as the data
+ * set it was retrieved for, and a token revoked by one test, directly or e.g. by deactivating or deleting its user,
+ * isn't handed out to the next one. Only a test that retrieves a token again after revoking it within the same data
+ * set has to go through {@link #revokeAccessToken(AccessToken)}, {@link #revokeAllAccessTokens(String, AccessToken)}
+ * or {@link #evict(AccessToken)}.
+ */
+public class AccessTokenCache {
+
+    private static final long DEFAULT_REFRESH_MARGIN = TimeUnit.SECONDS.toMillis(
+            Long.getLong("connector.token-cache.refresh-margin", 10));
+
+    private static AccessTokenCache shared;
+
+    private final OsiamConnector osiamConnector;
+    private final String clientId;
+    private final long refreshMargin;
+    private final Map<Key, AccessToken> accessTokens = new HashMap<>();
+
+    public AccessTokenCache(OsiamConnector osiamConnector, String clientId) {
+        this(osiamConnector, clientId, DEFAULT_REFRESH_MARGIN);
+    }
+
+    public AccessTokenCache(OsiamConnector osiamConnector, String clientId, long refreshMargin) {
+        this.osiamConnector = osiamConnector;
+        this.clientId = clientId;
+        this.refreshMargin = refreshMargin;
+    }
+
+    /**
+     * Returns the cache shared by all tests of the JVM. It is created with the connector of the first caller.
+     */
+    public static synchronized AccessTokenCache shared(OsiamConnector osiamConnector, String clientId) {
+        if (shared == null) {
+            shared = new AccessTokenCache(osiamConnector, clientId);
+        } else if (!shared.clientId.equals(clientId)) {
+            throw new IllegalStateException("The shared access token cache belongs to the client " + shared.clientId
+                    + ", not to " + clientId);
+        }
+        return shared;
+    }
+
+    /**
+     * Clears the shared cache, if it has been created.
+     */
+    static synchronized void clearShared() {
+        if (shared != null) {
+            shared.clear();
+        }
+    }
+
+    /**
+     * Returns a live access token retrieved with the client credentials grant.
+     */
+    public synchronized AccessToken retrieveAccessToken(Scope scope) {
+        Key key = new Key(clientId, null, scope);
+        AccessToken accessToken = liveAccessToken(key);
+        if (accessToken == null) {
+            accessToken = osiamConnector.retrieveAccessToken(scope);
+            accessTokens.put(key, accessToken);
+        }
+        return accessToken;
+    }
+
+    /**
+     * Returns a live access token retrieved with the resource owner password credentials grant.
+     */
+    public synchronized AccessToken retrieveAccessToken(String userName, String password, Scope scope) {
+        Key key = new Key(clientId, userName, scope);
+        AccessToken accessToken = liveAccessToken(key);
+        if (accessToken == null) {
+            accessToken = osiamConnector.retrieveAccessToken(userName, password, scope);
+            accessTokens.put(key, accessToken);
+        }
+        return accessToken;
+    }
+
+    /**
+     * Revokes the given access token and removes it from the cache.
+     */
+    public void revokeAccessToken(AccessToken accessToken) {
+        evict(accessToken);
+        osiamConnector.revokeAccessToken(accessToken);
+    }
+
+    /**
+     * Revokes all access tokens of the given user. As the cache doesn't know the ids of the users it holds tokens
+     * for, the whole cache is cleared.
+     */
+    public void revokeAllAccessTokens(String userId, AccessToken accessToken) {
+        clear();
+        osiamConnector.revokeAllAccessTokens(userId, accessToken);
+    }
+
+    /**
+     * Removes the given access token from the cache, e.g. after it has been revoked as a side effect of deactivating
+     * or deleting its user.
+     */
+    public synchronized void evict(AccessToken accessToken) {
+        Iterator<AccessToken> iterator = accessTokens.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getToken().equals(accessToken.getToken())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        accessTokens.clear();
+    }
+
+    private AccessToken liveAccessToken(Key key) {
+        AccessToken accessToken = accessTokens.get(key);
+        if (accessToken == null) {
+            return null;
+        }
+        if (!accessToken.isExpired() && !expiresSoon(accessToken)) {
+            return accessToken;
+        }
+        accessTokens.remove(key);
+        if (accessToken.isExpired() || accessToken.getRefreshToken() == null) {
+            return null;
+        }
+        try {
+            AccessToken refreshedAccessToken = osiamConnector.refreshAccessToken(accessToken, key.scope);
+            accessTokens.put(key, refreshedAccessToken);
+            return refreshedAccessToken;
+        } catch (OsiamClientException e) {
+            return null;
+        }
+    }
+
+    private boolean expiresSoon(AccessToken accessToken) {
+        return accessToken.getExpiresAt() != null
+                && accessToken.getExpiresAt().getTime() - System.currentTimeMillis() < refreshMargin;
+    }
+
+    private static final class Key {
+
+        private final String clientId;
+        private final String userName;
+        private final Scope scope;
+
+        private Key(String clientId, String userName, Scope scope) {
+            this.clientId = clientId;
+            this.userName = userName;
+            this.scope = scope;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(clientId, key.clientId)
+                    && Objects.equals(userName, key.userName)
+                    && Objects.equals(scope, key.scope);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(clientId, userName, scope);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import org.osiam.client.exception.OsiamClientException;
+import org.osiam.client.oauth.AccessToken;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Holds an access token and refreshes it in the background shortly before it expires, so that callers don't run
+ * into an expired token and have to wait for a new one.
+ * <p>
+ * Refreshes run on a scheduler shared by all managers. Concurrent refreshes, scheduled or triggered by callers, are
+ * coalesced into one request. If the token can't be refreshed, e.g. because the refresh token has expired, a new one
+ * is retrieved with the given grant. If that fails as well, the scheduled refresh is retried with an exponential
+ * backoff.
+ * <p>
+ * A token is refreshed the refresh margin before it expires, but not before half of its remaining lifetime has
+ * passed, so that tokens living shorter than the margin aren't refreshed in a tight loop.
+ */
+public class AccessTokenManager implements AutoCloseable {
+
+    private static final long DEFAULT_REFRESH_MARGIN = TimeUnit.SECONDS.toMillis(
+            Long.getLong("connector.token-manager.refresh-margin", 10));
+    private static final long MIN_REFRESH_DELAY = 250;
+    private static final long MAX_RETRY_DELAY = TimeUnit.SECONDS.toMillis(30);
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "access-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final OsiamConnector osiamConnector;
+    private final Supplier<AccessToken> grant;
+    private final long refreshMargin;
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private AccessToken accessToken;
+    private CompletableFuture<AccessToken> inFlightRefresh;
+    private ScheduledFuture<?> scheduledRefresh;
+    private int failedRefreshes;
+    private boolean closed;
+
+    public AccessTokenManager(OsiamConnector osiamConnector, Supplier<AccessToken> grant) {
+        this(osiamConnector, grant, DEFAULT_REFRESH_MARGIN);
+    }
+
+    /**
+     * Retrieves the first access token with the given grant and schedules its refresh.
+     *
+     * @param grant         retrieves a new access token, e.g. {@code () -> connector.retrieveAccessToken(Scope.ADMIN)}
+     * @param refreshMargin the time in milliseconds before the expiry of a token at which it is refreshed
+     */
+    public AccessTokenManager(OsiamConnector osiamConnector, Supplier<AccessToken> grant, long refreshMargin) {
+        this.osiamConnector = osiamConnector;
+        this.grant = grant;
+        this.refreshMargin = refreshMargin;
+        update(grant.get());
+    }
+
+    /**
+     * Returns the current access token. Only if it has expired nevertheless, the caller waits for the refresh.
+     */
+    public AccessToken getAccessToken() {
+        CompletableFuture<AccessToken> refresh;
+        synchronized (this) {
+            if (!accessToken.isExpired()) {
+                return accessToken;
+            }
+            refresh = refresh();
+        }
+        try {
+            return refresh.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Refreshes the access token now, unless a refresh is already in flight, which is returned then.
+     */
+    public synchronized CompletableFuture<AccessToken> refresh() {
+        if (inFlightRefresh != null) {
+            return inFlightRefresh;
+        }
+        AccessToken current = accessToken;
+        CompletableFuture<AccessToken> refresh = CompletableFuture.supplyAsync(() -> refresh(current), SCHEDULER)
+                .whenComplete((refreshedAccessToken, e) -> {
+                    synchronized (this) {
+                        inFlightRefresh = null;
+                        if (refreshedAccessToken != null) {
+                            failedRefreshes = 0;
+                            update(refreshedAccessToken);
+                        } else {
+                            retry();
+                        }
+                    }
+                });
+        // the refresh completes only after the callback, which waits for this lock, unless it ran right away
+        if (!refresh.isDone()) {
+            inFlightRefresh = refresh;
+        }
+        return refresh;
+    }
+
+    /**
+     * Returns the number of refreshes since this manager was created.
+     */
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+    }
+
+    private AccessToken refresh(AccessToken current) {
+        refreshes.incrementAndGet();
+        if (current.getRefreshToken() != null) {
+            try {
+                return osiamConnector.refreshAccessToken(current);
+            } catch (OsiamClientException e) {
+                // the refresh token has expired or was revoked
+            }
+        }
+        return grant.get();
+    }
+
+    private synchronized void update(AccessToken refreshedAccessToken) {
+        accessToken = refreshedAccessToken;
+        if (accessToken.getExpiresAt() == null) {
+            return;
+        }
+        long lifetime = accessToken.getExpiresAt().getTime() - System.currentTimeMillis();
+        schedule(Math.max(lifetime - refreshMargin, Math.max(lifetime / 2, MIN_REFRESH_DELAY)));
+    }
+
+    private synchronized void retry() {
+        failedRefreshes++;
+        schedule(Math.min(MIN_REFRESH_DELAY << Math.min(failedRefreshes, 16), MAX_RETRY_DELAY));
+    }
+
+    private synchronized void schedule(long delay) {
+        if (closed) {
+            return;
+        }
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        scheduledRefresh = SCHEDULER.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import org.osiam.client.exception.UnauthorizedException;
+import org.osiam.client.oauth.AccessToken;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the results of {@link OsiamConnector#validateAccessToken(AccessToken)}, so that a token doesn't have to be
+ * validated remotely on every request.
+ * <p>
+ * A valid token is cached until it expires, but at most for the maximum staleness. Tokens revoked through this cache
+ * are invalid immediately, tokens revoked elsewhere within the maximum staleness. Invalid tokens are cached for a
+ * short time, so that repeated requests with the same invalid token don't all reach OSIAM.
+ * <p>
+ * The cache holds at most {@code maxEntries} tokens and evicts the least recently used one first, so that requests
+ * with ever new invalid tokens can't make it grow without bounds.
+ */
+public class AccessTokenValidationCache {
+
+    private static final long DEFAULT_MAX_STALENESS = TimeUnit.SECONDS.toMillis(
+            Long.getLong("connector.validation-cache.max-staleness", 30));
+    private static final long DEFAULT_NEGATIVE_TTL = TimeUnit.SECONDS.toMillis(
+            Long.getLong("connector.validation-cache.negative-ttl", 5));
+    private static final int DEFAULT_MAX_ENTRIES = Integer.getInteger("connector.validation-cache.max-entries", 10_000);
+
+    private final OsiamConnector osiamConnector;
+    private final long maxStaleness;
+    private final long negativeTtl;
+    private final int maxEntries;
+    private final Map<String, Entry> entries;
+    private final AtomicLong remoteValidations = new AtomicLong();
+    private long revocations;
+
+    public AccessTokenValidationCache(OsiamConnector osiamConnector) {
+        this(osiamConnector, DEFAULT_MAX_STALENESS, DEFAULT_NEGATIVE_TTL);
+    }
+
+    /**
+     * @param maxStaleness the time in milliseconds a valid token is cached at most
+     * @param negativeTtl  the time in milliseconds an invalid token is cached
+     */
+    public AccessTokenValidationCache(OsiamConnector osiamConnector, long maxStaleness, long negativeTtl) {
+        this(osiamConnector, maxStaleness, negativeTtl, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxStaleness the time in milliseconds a valid token is cached at most
+     * @param negativeTtl  the time in milliseconds an invalid token is cached
+     * @param maxEntries   the maximum number of cached tokens
+     */
+    public AccessTokenValidationCache(OsiamConnector osiamConnector, long maxStaleness, long negativeTtl,
+                                      int maxEntries) {
+        this.osiamConnector = osiamConnector;
+        this.maxStaleness = maxStaleness;
+        this.negativeTtl = negativeTtl;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > AccessTokenValidationCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the validated access token with the metadata of the token, like its user and scopes.
+     *
+     * @throws UnauthorizedException if the token is invalid, expired or revoked
+     */
+    public AccessToken validateAccessToken(AccessToken accessToken) {
+        Entry entry = liveEntry(accessToken.getToken());
+        if (entry == null) {
+            entry = validateRemotely(accessToken);
+        }
+        if (entry.error != null) {
+            throw entry.error;
+        }
+        return entry.validatedAccessToken;
+    }
+
+    /**
+     * Revokes the given access token. It is invalid for this cache immediately.
+     */
+    public void revokeAccessToken(AccessToken accessToken) {
+        osiamConnector.revokeAccessToken(accessToken);
+        synchronized (this) {
+            revocations++;
+            entries.put(accessToken.getToken(), new Entry(null,
+                    new UnauthorizedException("The access token has been revoked"), negativeTtl));
+        }
+    }
+
+    /**
+     * Revokes all access tokens of the given user and removes them from the cache.
+     */
+    public void revokeAllAccessTokens(String userId, AccessToken accessToken) {
+        osiamConnector.revokeAllAccessTokens(userId, accessToken);
+        synchronized (this) {
+            revocations++;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.validatedAccessToken != null && userId.equals(entry.validatedAccessToken.getUserId())) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the given access token from the cache, e.g. after it has been revoked as a side effect of deactivating
+     * or deleting its user.
+     */
+    public synchronized void evict(AccessToken accessToken) {
+        entries.remove(accessToken.getToken());
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of validations that went to OSIAM.
+     */
+    public long getRemoteValidations() {
+        return remoteValidations.get();
+    }
+
+    private synchronized Entry liveEntry(String token) {
+        Entry entry = entries.get(token);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(token);
+            return null;
+        }
+        return entry;
+    }
+
+    private Entry validateRemotely(AccessToken accessToken) {
+        long revocationsBefore;
+        synchronized (this) {
+            revocationsBefore = revocations;
+        }
+        remoteValidations.incrementAndGet();
+        Entry entry;
+        try {
+            AccessToken validatedAccessToken = osiamConnector.validateAccessToken(accessToken);
+            long timeToLive = maxStaleness;
+            if (validatedAccessToken.getExpiresAt() != null) {
+                timeToLive = Math.min(timeToLive,
+                        validatedAccessToken.getExpiresAt().getTime() - System.currentTimeMillis());
+            }
+            entry = new Entry(validatedAccessToken, null, timeToLive);
+        } catch (UnauthorizedException e) {
+            entry = new Entry(null, e, negativeTtl);
+        }
+        synchronized (this) {
+            Entry current = entries.get(accessToken.getToken());
+            if (current != null && current.error != null && current.expiresAt > System.currentTimeMillis()) {
+                // revoked while the validation was in flight
+                return current;
+            }
+            // a valid token is only cached if no revocation, possibly of all tokens of its user, raced with it
+            if (entry.error != null || revocations == revocationsBefore) {
+                entries.put(accessToken.getToken(), entry);
+            }
+        }
+        return entry;
+    }
+
+    private static final class Entry {
+
+        private final AccessToken validatedAccessToken;
+        private final UnauthorizedException error;
+        private final long expiresAt;
+
+        private Entry(AccessToken validatedAccessToken, UnauthorizedException error, long timeToLive) {
+            this.validatedAccessToken = validatedAccessToken;
+            this.error = error;
+            this.expiresAt = System.currentTimeMillis() + timeToLive;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseOperation;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import com.github.springtestdbunit.annotation.DatabaseTearDown;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osiam.client.exception.UnauthorizedException;
+import org.osiam.client.oauth.AccessToken;
+import org.osiam.client.oauth.Scope;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("/context.xml")
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        DbUnitTestExecutionListener.class})
+@DatabaseSetup("/database_seed_minimal.xml")
+@DatabaseTearDown(value = "/database_tear_down.xml", type = DatabaseOperation.DELETE_ALL)
+public class AccessTokenValidationCacheIT extends AbstractIntegrationTestBase {
+
+    private static final long MAX_STALENESS = TimeUnit.SECONDS.toMillis(2);
+    private static final long NEGATIVE_TTL = TimeUnit.SECONDS.toMillis(1);
+
+    private AccessTokenValidationCache validationCache;
+
+    @Before
+    public void setUp() {
+        accessToken = ACCESS_TOKEN_CACHE.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
+        validationCache = new AccessTokenValidationCache(OSIAM_CONNECTOR, MAX_STALENESS, NEGATIVE_TTL);
+    }
+
+    @Test
+    public void a_valid_access_token_is_validated_remotely_only_once() {
+        AccessToken validatedAccessToken = validationCache.validateAccessToken(accessToken);
+        for (int i = 0; i < 20; i++) {
+            validationCache.validateAccessToken(accessToken);
+        }
+
+        assertThat(validatedAccessToken.getUserName(), is(equalTo("marissa")));
+        assertThat(validationCache.getRemoteValidations(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void an_invalid_access_token_is_validated_remotely_only_once_within_the_negative_ttl() {
+        AccessToken invalidAccessToken = new AccessToken.Builder("invalid").build();
+
+        assertValidationFails(invalidAccessToken);
+        assertValidationFails(invalidAccessToken);
+
+        assertThat(validationCache.getRemoteValidations(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void an_invalid_access_token_is_validated_again_after_the_negative_ttl() throws InterruptedException {
+        AccessToken invalidAccessToken = new AccessToken.Builder("invalid").build();
+
+        assertValidationFails(invalidAccessToken);
+        TimeUnit.MILLISECONDS.sleep(NEGATIVE_TTL + 100);
+        assertValidationFails(invalidAccessToken);
+
+        assertThat(validationCache.getRemoteValidations(), is(equalTo(2L)));
+    }
+
+    @Test
+    public void the_number_of_cached_tokens_is_bounded() {
+        validationCache = new AccessTokenValidationCache(OSIAM_CONNECTOR, MAX_STALENESS, NEGATIVE_TTL, 2);
+
+        for (int i = 0; i < 5; i++) {
+            assertValidationFails(new AccessToken.Builder("invalid" + i).build());
+        }
+
+        assertThat(validationCache.size(), is(equalTo(2)));
+    }
+
+    @Test
+    public void revoking_through_the_cache_takes_effect_immediately() {
+        validationCache.validateAccessToken(accessToken);
+
+        validationCache.revokeAccessToken(accessToken);
+        ACCESS_TOKEN_CACHE.evict(accessToken);
+
+        assertValidationFails(accessToken);
+        assertThat(validationCache.getRemoteValidations(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void revoking_elsewhere_takes_effect_within_the_maximum_staleness() throws InterruptedException {
+        validationCache.validateAccessToken(accessToken);
+
+        ACCESS_TOKEN_CACHE.revokeAccessToken(accessToken);
+
+        long revokedAt = System.currentTimeMillis();
+        while (true) {
+            try {
+                validationCache.validateAccessToken(accessToken);
+            } catch (UnauthorizedException e) {
+                break;
+            }
+            if (System.currentTimeMillis() - revokedAt > MAX_STALENESS) {
+                fail("The revoked access token was still valid after the maximum staleness");
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+    }
+
+    @Test
+    public void revoking_all_access_tokens_of_a_user_takes_effect_immediately() {
+        AccessToken validatedAccessToken = validationCache.validateAccessToken(accessToken);
+
+        validationCache.revokeAllAccessTokens(validatedAccessToken.getUserId(), accessToken);
+        // revokes the tokens of the same user in the shared cache as well
+        ACCESS_TOKEN_CACHE.clear();
+
+        assertValidationFails(accessToken);
+        assertThat(validationCache.getRemoteValidations(), is(equalTo(2L)));
+    }
+
+    private void assertValidationFails(AccessToken accessToken) {
+        try {
+            validationCache.validateAccessToken(accessToken);
+            fail("Expected the validation to fail");
+        } catch (UnauthorizedException expected) {
+            // expected
+        }
+    }
+}
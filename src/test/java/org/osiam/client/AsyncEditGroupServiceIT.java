@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseOperation;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import com.github.springtestdbunit.annotation.DatabaseTearDown;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osiam.client.exception.ConflictException;
+import org.osiam.client.exception.NoResultException;
+import org.osiam.client.oauth.Scope;
+import org.osiam.client.query.QueryBuilder;
+import org.osiam.resources.scim.Group;
+import org.osiam.resources.scim.MemberRef;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("/context.xml")
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        DbUnitTestExecutionListener.class})
+@DatabaseSetup(value = "/database_seeds/EditGroupServiceIT/groups.xml")
+@DatabaseTearDown(value = "/database_tear_down.xml", type = DatabaseOperation.DELETE_ALL)
+public class AsyncEditGroupServiceIT extends AbstractIntegrationTestBase {
+
+    private static final int GROUPS = 200;
+    private static final int MAX_CONCURRENCY = 16;
+    private static final String DISPLAY_NAME_PREFIX = "async_group_";
+    private static final String MARISSA_ID = "cef9452e-00a9-4cec-a086-d171374ffbef";
+
+    private AsyncOsiamConnector asyncConnector;
+
+    @Before
+    public void setUp() {
+        accessToken = ACCESS_TOKEN_CACHE.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
+        asyncConnector = new AsyncOsiamConnector(OSIAM_CONNECTOR, MAX_CONCURRENCY);
+    }
+
+    @After
+    public void tearDown() {
+        asyncConnector.close();
+    }
+
+    @Test
+    public void creating_groups_concurrently_works() {
+        List<Group> createdGroups = createGroups();
+
+        assertThat(createdGroups, hasSize(GROUPS));
+        long totalResults = OSIAM_CONNECTOR.searchGroups(new QueryBuilder()
+                .filter("displayName sw \"" + DISPLAY_NAME_PREFIX + "\"")
+                .count(1)
+                .build(), accessToken).getTotalResults();
+        assertThat(totalResults, is(equalTo((long) GROUPS)));
+        assertThat(asyncConnector.getPeakConcurrency(), is(lessThanOrEqualTo(MAX_CONCURRENCY)));
+    }
+
+    @Test
+    public void creating_groups_with_existing_displayName_concurrently_raises_exceptions() throws Exception {
+        List<CompletableFuture<Group>> futures = new ArrayList<>();
+        for (int i = 0; i < MAX_CONCURRENCY * 2; i++) {
+            futures.add(asyncConnector.createGroupAsync(new Group.Builder("parent_group").build(), accessToken));
+        }
+
+        for (CompletableFuture<Group> future : futures) {
+            assertThat(failureOf(future), is(instanceOf(ConflictException.class)));
+        }
+    }
+
+    @Test
+    public void replacing_groups_concurrently_works() {
+        List<CompletableFuture<Group>> replacedGroups = new ArrayList<>();
+        for (Group group : createGroups()) {
+            Group replacement = new Group.Builder(group.getDisplayName())
+                    .addMember(new MemberRef.Builder().setValue(MARISSA_ID).build())
+                    .build();
+            replacedGroups.add(asyncConnector.replaceGroupAsync(group.getId(), replacement, accessToken));
+        }
+
+        for (CompletableFuture<Group> replacedGroup : replacedGroups) {
+            Group groupInDb = asyncConnector.getGroupAsync(replacedGroup.join().getId(), accessToken).join();
+            assertThat(groupInDb.getMembers(), hasSize(1));
+            assertThat(groupInDb.getMembers().iterator().next().getValue(), is(equalTo(MARISSA_ID)));
+        }
+    }
+
+    @Test
+    public void deleting_groups_concurrently_works() throws Exception {
+        List<Group> groups = createGroups();
+        List<CompletableFuture<Void>> deletions = new ArrayList<>();
+        for (Group group : groups) {
+            deletions.add(asyncConnector.deleteGroupAsync(group.getId(), accessToken));
+        }
+        CompletableFuture.allOf(deletions.toArray(new CompletableFuture[deletions.size()])).join();
+
+        for (Group group : groups) {
+            assertThat(failureOf(asyncConnector.getGroupAsync(group.getId(), accessToken)),
+                    is(instanceOf(NoResultException.class)));
+        }
+    }
+
+    private List<Group> createGroups() {
+        List<CompletableFuture<Group>> futures = new ArrayList<>();
+        for (int i = 0; i < GROUPS; i++) {
+            futures.add(asyncConnector.createGroupAsync(new Group.Builder(DISPLAY_NAME_PREFIX + i).build(),
+                    accessToken));
+        }
+        List<Group> groups = new ArrayList<>();
+        for (CompletableFuture<Group> future : futures) {
+            groups.add(future.join());
+        }
+        return groups;
+    }
+
+    private Throwable failureOf(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("Expected the call to fail");
+        return null;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseOperation;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import com.github.springtestdbunit.annotation.DatabaseTearDown;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osiam.client.exception.ConflictException;
+import org.osiam.client.exception.NoResultException;
+import org.osiam.client.oauth.Scope;
+import org.osiam.client.query.QueryBuilder;
+import org.osiam.resources.scim.User;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("/context.xml")
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        DbUnitTestExecutionListener.class})
+@DatabaseSetup(value = "/database_seed.xml")
+@DatabaseTearDown(value = "/database_tear_down.xml", type = DatabaseOperation.DELETE_ALL)
+public class AsyncEditUserServiceIT extends AbstractIntegrationTestBase {
+
+    private static final int USERS = 200;
+    private static final int MAX_CONCURRENCY = 16;
+    private static final String USER_NAME_PREFIX = "async_user_";
+    private static final String USER_NAME_EXISTING_USER = "hsimpson";
+
+    private AsyncOsiamConnector asyncConnector;
+
+    @Before
+    public void setup() {
+        accessToken = ACCESS_TOKEN_CACHE.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
+        asyncConnector = new AsyncOsiamConnector(OSIAM_CONNECTOR, MAX_CONCURRENCY);
+    }
+
+    @After
+    public void tearDown() {
+        asyncConnector.close();
+    }
+
+    @Test
+    public void creating_users_concurrently_works() {
+        List<User> createdUsers = createUsers();
+
+        assertThat(createdUsers.size(), is(equalTo(USERS)));
+        long totalResults = OSIAM_CONNECTOR.searchUsers(new QueryBuilder()
+                .filter("userName sw \"" + USER_NAME_PREFIX + "\"")
+                .count(1)
+                .build(), accessToken).getTotalResults();
+        assertThat(totalResults, is(equalTo((long) USERS)));
+        assertThat(asyncConnector.getPeakConcurrency(), is(lessThanOrEqualTo(MAX_CONCURRENCY)));
+    }
+
+    @Test
+    public void creating_users_with_existing_user_name_concurrently_raises_exceptions() throws Exception {
+        List<CompletableFuture<User>> futures = new ArrayList<>();
+        for (int i = 0; i < MAX_CONCURRENCY * 2; i++) {
+            futures.add(asyncConnector.createUserAsync(
+                    new User.Builder(USER_NAME_EXISTING_USER).setPassword("password").build(), accessToken));
+        }
+
+        for (CompletableFuture<User> future : futures) {
+            assertThat(failureOf(future), is(instanceOf(ConflictException.class)));
+        }
+    }
+
+    @Test
+    public void replacing_users_concurrently_works() {
+        List<CompletableFuture<User>> replacedUsers = new ArrayList<>();
+        for (User user : createUsers()) {
+            User replacement = new User.Builder(user).setDisplayName("replaced " + user.getUserName()).build();
+            replacedUsers.add(asyncConnector.replaceUserAsync(user.getId(), replacement, accessToken));
+        }
+
+        for (CompletableFuture<User> replacedUser : replacedUsers) {
+            User userInDb = asyncConnector.getUserAsync(replacedUser.join().getId(), accessToken).join();
+            assertThat(userInDb.getDisplayName(), is(equalTo("replaced " + userInDb.getUserName())));
+        }
+    }
+
+    @Test
+    public void deleting_users_concurrently_works() throws Exception {
+        List<User> users = createUsers();
+        List<CompletableFuture<Void>> deletions = new ArrayList<>();
+        for (User user : users) {
+            deletions.add(asyncConnector.deleteUserAsync(user.getId(), accessToken));
+        }
+        CompletableFuture.allOf(deletions.toArray(new CompletableFuture[deletions.size()])).join();
+
+        for (User user : users) {
+            assertThat(failureOf(asyncConnector.getUserAsync(user.getId(), accessToken)),
+                    is(instanceOf(NoResultException.class)));
+        }
+    }
+
+    @Test
+    public void submitting_blocks_once_the_maximum_of_pending_calls_is_reached() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (AsyncOsiamConnector boundedConnector = new AsyncOsiamConnector(OSIAM_CONNECTOR, 1, 2)) {
+            boundedConnector.submit(() -> held(release));
+            boundedConnector.submit(() -> held(release));
+            AtomicReference<CompletableFuture<User>> submitted = new AtomicReference<>();
+            Thread producer = new Thread(
+                    () -> submitted.set(boundedConnector.getUserAsync(VALID_USER_ID, accessToken)));
+            producer.start();
+
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (producer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(producer.getState(), is(Thread.State.WAITING));
+            assertThat(submitted.get(), is(nullValue()));
+
+            release.countDown();
+            producer.join(TimeUnit.SECONDS.toMillis(10));
+
+            assertThat(submitted.get().get(10, TimeUnit.SECONDS).getId(), is(equalTo(VALID_USER_ID)));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void a_dependent_stage_fails_fast_once_the_maximum_of_pending_calls_is_reached() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (AsyncOsiamConnector boundedConnector = new AsyncOsiamConnector(OSIAM_CONNECTOR, 2, 2)) {
+            CompletableFuture<Void> saturated = new CompletableFuture<>();
+            CompletableFuture<CompletableFuture<User>> dependent = boundedConnector.submit(() -> {
+                try {
+                    saturated.get(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return boundedConnector.getUserAsync(VALID_USER_ID, accessToken);
+            });
+            boundedConnector.submit(() -> held(release));
+            saturated.complete(null);
+
+            assertThat(failureOf(dependent.get(10, TimeUnit.SECONDS)),
+                    is(instanceOf(RejectedExecutionException.class)));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void an_error_thrown_by_a_call_fails_its_future() throws Exception {
+        CompletableFuture<Void> future = asyncConnector.submit(() -> {
+            throw new AssertionError("thrown by the call");
+        });
+
+        assertThat(failureOf(future), is(instanceOf(AssertionError.class)));
+    }
+
+    @Test
+    public void calls_submitted_after_close_fail() throws Exception {
+        asyncConnector.close();
+
+        assertThat(failureOf(asyncConnector.getUserAsync(VALID_USER_ID, accessToken)),
+                is(instanceOf(RejectedExecutionException.class)));
+    }
+
+    @Test
+    public void the_number_of_incomplete_calls_is_bounded_by_the_maximum_of_pending_calls() {
+        int maxConcurrency = 2;
+        int maxPending = 4;
+        List<CompletableFuture<User>> futures = new ArrayList<>();
+        try (AsyncOsiamConnector boundedConnector = new AsyncOsiamConnector(OSIAM_CONNECTOR, maxConcurrency,
+                maxPending)) {
+            for (int i = 0; i < 50; i++) {
+                futures.add(boundedConnector.getUserAsync(VALID_USER_ID, accessToken));
+                long incomplete = futures.stream().filter(future -> !future.isDone()).count();
+                // a finished call gives back its slot right before its future is completed
+                assertThat(incomplete, is(lessThanOrEqualTo((long) maxPending + maxConcurrency)));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+
+            assertThat(boundedConnector.getPeakConcurrency(), is(lessThanOrEqualTo(maxConcurrency)));
+        }
+    }
+
+    private List<User> createUsers() {
+        List<CompletableFuture<User>> futures = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            futures.add(asyncConnector.createUserAsync(
+                    new User.Builder(USER_NAME_PREFIX + i).setPassword("password").build(), accessToken));
+        }
+        List<User> users = new ArrayList<>();
+        for (CompletableFuture<User> future : futures) {
+            users.add(future.join());
+        }
+        return users;
+    }
+
+    private static Void held(CountDownLatch release) {
+        try {
+            release.await(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private Throwable failureOf(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("Expected the call to fail");
+        return null;
+    }
+}
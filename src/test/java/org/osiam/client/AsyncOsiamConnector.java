@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import org.osiam.client.oauth.AccessToken;
+import org.osiam.client.query.Query;
+import org.osiam.resources.scim.Group;
+import org.osiam.resources.scim.SCIMSearchResult;
+import org.osiam.resources.scim.User;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Offers the CRUD and search methods of an {@link OsiamConnector} as {@link CompletableFuture}s.
+ * <p>
+ * At most {@code maxConcurrency} calls are executed at the same time and at most {@code maxPending} calls are
+ * accepted but not yet completed. Once that limit is reached, the {@code ...Async} methods block the calling thread
+ * until a call completes, so that a producer can't outrun OSIAM. The connector itself is blocking, so every
+ * executing call occupies one of the {@code maxConcurrency} threads, but not the thread of the caller.
+ * <p>
+ * Dependent stages that don't name an executor run on the thread that completed the future, i.e. on one of the
+ * threads of this connector. If such a stage calls an {@code ...Async} method while the limit is reached, it doesn't
+ * block, as all threads could end up waiting for each other. The returned future fails with a
+ * {@link RejectedExecutionException} instead.
+ * <p>
+ * Futures of failed calls complete exceptionally with the exception the connector has thrown, e.g. a
+ * {@link org.osiam.client.exception.ConflictException}.
+ */
+public class AsyncOsiamConnector implements AutoCloseable {
+
+    private final OsiamConnector osiamConnector;
+    private final ThreadLocal<Boolean> worker = ThreadLocal.withInitial(() -> false);
+    private final ExecutorService executor;
+    private final Semaphore pending;
+    private final AtomicInteger executing = new AtomicInteger();
+    private final AtomicInteger peakExecuting = new AtomicInteger();
+
+    /**
+     * Creates a connector that accepts four times as many calls as it executes concurrently.
+     */
+    public AsyncOsiamConnector(OsiamConnector osiamConnector, int maxConcurrency) {
+        this(osiamConnector, maxConcurrency, 4 * maxConcurrency);
+    }
+
+    public AsyncOsiamConnector(OsiamConnector osiamConnector, int maxConcurrency, int maxPending) {
+        if (maxConcurrency < 1 || maxPending < maxConcurrency) {
+            throw new IllegalArgumentException("Expected 1 <= maxConcurrency <= maxPending, but got "
+                    + maxConcurrency + " and " + maxPending);
+        }
+        this.osiamConnector = osiamConnector;
+        this.pending = new Semaphore(maxPending);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+            Thread thread = new Thread(() -> {
+                worker.set(true);
+                runnable.run();
+            }, "async-osiam-connector-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<User> createUserAsync(User user, AccessToken accessToken) {
+        return submit(() -> osiamConnector.createUser(user, accessToken));
+    }
+
+    public CompletableFuture<User> getUserAsync(String id, AccessToken accessToken) {
+        return submit(() -> osiamConnector.getUser(id, accessToken));
+    }
+
+    public CompletableFuture<User> replaceUserAsync(String id, User user, AccessToken accessToken) {
+        return submit(() -> osiamConnector.replaceUser(id, user, accessToken));
+    }
+
+    public CompletableFuture<Void> deleteUserAsync(String id, AccessToken accessToken) {
+        return submit(() -> {
+            osiamConnector.deleteUser(id, accessToken);
+            return null;
+        });
+    }
+
+    public CompletableFuture<SCIMSearchResult<User>> searchUsersAsync(Query query, AccessToken accessToken) {
+        return submit(() -> osiamConnector.searchUsers(query, accessToken));
+    }
+
+    public CompletableFuture<Group> createGroupAsync(Group group, AccessToken accessToken) {
+        return submit(() -> osiamConnector.createGroup(group, accessToken));
+    }
+
+    public CompletableFuture<Group> getGroupAsync(String id, AccessToken accessToken) {
+        return submit(() -> osiamConnector.getGroup(id, accessToken));
+    }
+
+    public CompletableFuture<Group> replaceGroupAsync(String id, Group group, AccessToken accessToken) {
+        return submit(() -> osiamConnector.replaceGroup(id, group, accessToken));
+    }
+
+    public CompletableFuture<Void> deleteGroupAsync(String id, AccessToken accessToken) {
+        return submit(() -> {
+            osiamConnector.deleteGroup(id, accessToken);
+            return null;
+        });
+    }
+
+    public CompletableFuture<SCIMSearchResult<Group>> searchGroupsAsync(Query query, AccessToken accessToken) {
+        return submit(() -> osiamConnector.searchGroups(query, accessToken));
+    }
+
+    /**
+     * Returns the highest number of calls that were executed at the same time.
+     */
+    public int getPeakConcurrency() {
+        return peakExecuting.get();
+    }
+
+    /**
+     * Stops accepting calls. Calls that were already accepted are still completed, the futures of later calls fail
+     * with a {@link RejectedExecutionException}.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Executes the given call, blocking until it is accepted, unless called by a thread of this connector.
+     */
+    <T> CompletableFuture<T> submit(Supplier<T> call) {
+        if (worker.get()) {
+            if (!pending.tryAcquire()) {
+                return failed(new RejectedExecutionException(
+                        "The maximum of pending calls is reached and a call of a dependent stage must not block"));
+            }
+        } else {
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return failed(e);
+            }
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                peakExecuting.accumulateAndGet(executing.incrementAndGet(), Math::max);
+                T value = null;
+                Throwable failure = null;
+                try {
+                    value = call.get();
+                } catch (Throwable e) {
+                    // also errors, e.g. an AssertionError, as the future would never complete otherwise
+                    failure = e;
+                } finally {
+                    // release before completing, so that dependent stages can submit further calls
+                    executing.decrementAndGet();
+                    pending.release();
+                }
+                if (failure == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(failure);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the connector has been closed
+            pending.release();
+            return failed(e);
+        }
+        return result;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        return failed;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseOperation;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import com.github.springtestdbunit.annotation.DatabaseTearDown;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osiam.client.oauth.Scope;
+import org.osiam.client.query.QueryBuilder;
+import org.osiam.resources.scim.SCIMSearchResult;
+import org.osiam.resources.scim.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Verifies the responses of searches that select attributes through {@link OsiamConnector#searchUsers} and measures
+ * with a {@link PooledHttpClient}, which counts the received bytes, how many bytes the selection saves. The measurement
+ * on a generated data set only runs if its size is set with {@code -Dprojection.users}.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("/context.xml")
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        DbUnitTestExecutionListener.class})
+@DatabaseSetup("/database_seeds/SearchUserServiceIT/database_seed_over_100_user.xml")
+@DatabaseTearDown(value = "/database_tear_down.xml", type = DatabaseOperation.DELETE_ALL)
+public class AttributeProjectionIT extends AbstractIntegrationTestBase {
+
+    private static final int SEED_USERS = 111;
+    private static final int GENERATED_USERS = Integer.getInteger("projection.users", 0);
+    private static final int PAGE_SIZE = 1000;
+    private static final String PROJECTION = "userName";
+    private static final Path REPORT = Paths.get("target/failsafe-reports/attribute-projection.txt");
+
+    @Autowired
+    private DataSource dataSource;
+
+    private PooledHttpClient httpClient;
+
+    @Before
+    public void setUp() {
+        accessToken = ACCESS_TOKEN_CACHE.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
+        httpClient = new PooledHttpClient.Builder(OSIAM_ENDPOINT).build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        httpClient.close();
+    }
+
+    @Test
+    public void projected_search_only_returns_the_selected_attributes() {
+        SCIMSearchResult<User> result = OSIAM_CONNECTOR.searchUsers(new QueryBuilder()
+                .attributes(PROJECTION)
+                .count(PAGE_SIZE)
+                .build(), accessToken);
+
+        assertThat(result.getTotalResults(), is(equalTo((long) SEED_USERS)));
+        for (User user : result.getResources()) {
+            assertThat(user.getId(), is(notNullValue()));
+            assertThat(user.getUserName(), is(notNullValue()));
+            assertThat(user.getName(), is(nullValue()));
+            assertThat(user.getDisplayName(), is(nullValue()));
+            assertThat(user.getEmails().isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void projected_search_of_the_seed_transfers_fewer_bytes() throws IOException {
+        long full = bytesOfAllUsers(null);
+        long projected = bytesOfAllUsers(PROJECTION);
+
+        report("seed", SEED_USERS, full, projected);
+        assertThat(projected, is(lessThan(full)));
+    }
+
+    @Test
+    public void projected_search_of_a_generated_data_set_transfers_fewer_bytes() throws SQLException, IOException {
+        assumeTrue(GENERATED_USERS > 0);
+        new SyntheticDataSet(GENERATED_USERS).insert(dataSource);
+
+        long full = bytesOfAllUsers(null);
+        long projected = bytesOfAllUsers(PROJECTION);
+
+        report("generated", SEED_USERS + GENERATED_USERS, full, projected);
+        assertThat(projected, is(lessThan(full)));
+    }
+
+    private long bytesOfAllUsers(String attributes) {
+        long receivedBytes = httpClient.getReceivedBytes();
+        long startIndex = 1;
+        SCIMSearchResult<User> page;
+        do {
+            QueryBuilder query = new QueryBuilder()
+                    .ascending("userName")
+                    .startIndex(startIndex)
+                    .count(PAGE_SIZE);
+            if (attributes != null) {
+                query.attributes(attributes);
+            }
+            page = httpClient.searchUsers(query.build(), accessToken);
+            startIndex += page.getResources().size();
+        } while (!page.getResources().isEmpty() && startIndex <= page.getTotalResults());
+        return httpClient.getReceivedBytes() - receivedBytes;
+    }
+
+    private void report(String dataSet, int users, long full, long projected) throws IOException {
+        String line = String.format("%-9s %7d users: %12d bytes full, %12d bytes with attributes=%s (%.1f%% less)%n",
+                dataSet, users, full, projected, PROJECTION, 100.0 * (full - projected) / full);
+        System.out.print(line);
+        Files.createDirectories(REPORT.getParent());
+        Files.write(REPORT, line.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
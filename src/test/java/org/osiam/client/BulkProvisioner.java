@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import org.osiam.client.exception.BadRequestException;
+import org.osiam.client.exception.ConflictException;
+import org.osiam.client.exception.ForbiddenException;
+import org.osiam.client.exception.NoResultException;
+import org.osiam.client.exception.UnauthorizedException;
+import org.osiam.client.oauth.AccessToken;
+import org.osiam.resources.scim.Group;
+import org.osiam.resources.scim.MemberRef;
+import org.osiam.resources.scim.Resource;
+import org.osiam.resources.scim.User;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Executes {@link BulkRequest}s in chunks, running the operations of a chunk concurrently with an
+ * {@link AsyncOsiamConnector}.
+ * <p>
+ * OSIAM has no {@code /Bulk} endpoint, so every operation is still a single request. A chunk ends early if an
+ * operation refers to a bulk id created in the same chunk, so that references are always resolved against
+ * completed operations.
+ */
+public class BulkProvisioner {
+
+    public static final int DEFAULT_CHUNK_SIZE = Integer.getInteger("connector.bulk.chunk-size", 100);
+
+    private final AsyncOsiamConnector asyncConnector;
+    private final int chunkSize;
+
+    public BulkProvisioner(AsyncOsiamConnector asyncConnector) {
+        this(asyncConnector, DEFAULT_CHUNK_SIZE);
+    }
+
+    public BulkProvisioner(AsyncOsiamConnector asyncConnector, int chunkSize) {
+        this.asyncConnector = asyncConnector;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Executes the operations of the given request chunk by chunk.
+     * <p>
+     * As the operations of a chunk run concurrently, {@link BulkRequest#getFailOnErrors() failOnErrors} is only
+     * checked once a chunk has completed. The operations of the chunk in which the limit is reached, i.e. up to
+     * {@code chunkSize - 1} operations after the failing one, are still executed and included in the response.
+     */
+    public BulkResponse execute(BulkRequest request, AccessToken accessToken) {
+        Map<String, String> resolvedIds = new HashMap<>();
+        List<BulkResponse.Result> results = new ArrayList<>();
+        List<BulkRequest.Operation> chunk = new ArrayList<>();
+        Set<String> chunkBulkIds = new HashSet<>();
+        int errors = 0;
+
+        for (BulkRequest.Operation operation : request.getOperations()) {
+            boolean refersToChunk = operation.getReferencedBulkIds().stream().anyMatch(chunkBulkIds::contains);
+            if (chunk.size() == chunkSize || refersToChunk) {
+                errors += executeChunk(chunk, resolvedIds, results, accessToken);
+                chunk.clear();
+                chunkBulkIds.clear();
+                if (request.getFailOnErrors() > 0 && errors >= request.getFailOnErrors()) {
+                    return new BulkResponse(results);
+                }
+            }
+            chunk.add(operation);
+            if (operation.getBulkId() != null) {
+                chunkBulkIds.add(operation.getBulkId());
+            }
+        }
+        executeChunk(chunk, resolvedIds, results, accessToken);
+        return new BulkResponse(results);
+    }
+
+    private int executeChunk(List<BulkRequest.Operation> chunk, Map<String, String> resolvedIds,
+                             List<BulkResponse.Result> results, AccessToken accessToken) {
+        List<CompletableFuture<? extends Resource>> futures = new ArrayList<>();
+        for (BulkRequest.Operation operation : chunk) {
+            futures.add(submit(operation, resolvedIds, accessToken));
+        }
+        int errors = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            BulkResponse.Result result = await(chunk.get(i), futures.get(i));
+            if (result.isSuccess() && chunk.get(i).getBulkId() != null) {
+                resolvedIds.put(chunk.get(i).getBulkId(), result.getResource().getId());
+            }
+            if (!result.isSuccess()) {
+                errors++;
+            }
+            results.add(result);
+        }
+        return errors;
+    }
+
+    private CompletableFuture<? extends Resource> submit(BulkRequest.Operation operation,
+                                                         Map<String, String> resolvedIds, AccessToken accessToken) {
+        String id;
+        Resource data;
+        try {
+            id = resolve(operation.getId(), resolvedIds);
+            data = operation.getData() instanceof Group
+                    ? resolveMembers((Group) operation.getData(), resolvedIds)
+                    : operation.getData();
+        } catch (UnresolvedBulkIdException e) {
+            CompletableFuture<Resource> unresolved = new CompletableFuture<>();
+            unresolved.completeExceptionally(e);
+            return unresolved;
+        }
+        boolean users = "Users".equals(operation.getEndpoint());
+        switch (operation.getMethod()) {
+            case POST:
+                return users
+                        ? asyncConnector.createUserAsync((User) data, accessToken)
+                        : asyncConnector.createGroupAsync((Group) data, accessToken);
+            case PUT:
+                return users
+                        ? asyncConnector.replaceUserAsync(id, (User) data, accessToken)
+                        : asyncConnector.replaceGroupAsync(id, (Group) data, accessToken);
+            case DELETE:
+                return (users
+                        ? asyncConnector.deleteUserAsync(id, accessToken)
+                        : asyncConnector.deleteGroupAsync(id, accessToken))
+                        .thenApply(ignored -> (Resource) null);
+            default:
+                throw new IllegalArgumentException("Unsupported method " + operation.getMethod());
+        }
+    }
+
+    private BulkResponse.Result await(BulkRequest.Operation operation, CompletableFuture<? extends Resource> future) {
+        try {
+            Resource resource = future.get();
+            return new BulkResponse.Result(operation, successStatus(operation.getMethod()), resource, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            return new BulkResponse.Result(operation, errorStatus(e.getCause()), null, e.getCause().getMessage());
+        }
+    }
+
+    private String resolve(String id, Map<String, String> resolvedIds) {
+        if (!BulkRequest.Operation.isBulkIdReference(id)) {
+            return id;
+        }
+        String bulkId = id.substring(BulkRequest.BULK_ID_PREFIX.length());
+        String resolvedId = resolvedIds.get(bulkId);
+        if (resolvedId == null) {
+            throw new UnresolvedBulkIdException(bulkId);
+        }
+        return resolvedId;
+    }
+
+    private Group resolveMembers(Group group, Map<String, String> resolvedIds) {
+        if (group.getMembers() == null
+                || group.getMembers().stream().noneMatch(m -> BulkRequest.Operation.isBulkIdReference(m.getValue()))) {
+            return group;
+        }
+        Set<MemberRef> members = new LinkedHashSet<>();
+        for (MemberRef member : group.getMembers()) {
+            members.add(BulkRequest.Operation.isBulkIdReference(member.getValue())
+                    ? new MemberRef.Builder().setValue(resolve(member.getValue(), resolvedIds)).build()
+                    : member);
+        }
+        return new Group.Builder(group).setMembers(members).build();
+    }
+
+    private int successStatus(BulkRequest.Method method) {
+        switch (method) {
+            case POST:
+                return 201;
+            case DELETE:
+                return 204;
+            default:
+                return 200;
+        }
+    }
+
+    private int errorStatus(Throwable error) {
+        if (error instanceof BadRequestException) {
+            return 400;
+        }
+        if (error instanceof UnauthorizedException) {
+            return 401;
+        }
+        if (error instanceof ForbiddenException) {
+            return 403;
+        }
+        if (error instanceof NoResultException) {
+            return 404;
+        }
+        if (error instanceof ConflictException || error instanceof UnresolvedBulkIdException) {
+            return 409;
+        }
+        return 500;
+    }
+
+    private static final class UnresolvedBulkIdException extends RuntimeException {
+
+        private UnresolvedBulkIdException(String bulkId) {
+            super("The bulk id " + bulkId + " can't be resolved, because its operation failed or doesn't exist");
+        }
+    }
+}
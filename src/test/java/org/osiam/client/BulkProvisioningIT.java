@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseOperation;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import com.github.springtestdbunit.annotation.DatabaseTearDown;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osiam.client.oauth.Scope;
+import org.osiam.client.query.QueryBuilder;
+import org.osiam.resources.scim.Group;
+import org.osiam.resources.scim.MemberRef;
+import org.osiam.resources.scim.User;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("/context.xml")
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        DbUnitTestExecutionListener.class})
+@DatabaseSetup(value = "/database_seed.xml")
+@DatabaseTearDown(value = "/database_tear_down.xml", type = DatabaseOperation.DELETE_ALL)
+public class BulkProvisioningIT extends AbstractIntegrationTestBase {
+
+    private static final int USERS = Integer.getInteger("bulk.users", 0);
+    private static final int MAX_CONCURRENCY = 16;
+    private static final String USER_NAME_EXISTING_USER = "hsimpson";
+    private static final Path REPORT = Paths.get("target/failsafe-reports/bulk-throughput.txt");
+
+    private AsyncOsiamConnector asyncConnector;
+    private BulkProvisioner bulkProvisioner;
+
+    @Before
+    public void setup() {
+        accessToken = ACCESS_TOKEN_CACHE.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
+        asyncConnector = new AsyncOsiamConnector(OSIAM_CONNECTOR, MAX_CONCURRENCY);
+        bulkProvisioner = new BulkProvisioner(asyncConnector);
+    }
+
+    @After
+    public void tearDown() {
+        asyncConnector.close();
+    }
+
+    @Test
+    public void every_operation_gets_its_own_result() {
+        BulkRequest request = new BulkRequest.Builder()
+                .createUser("user1", new User.Builder("bulk_user_1").setPassword("password").build())
+                .createUser("user2", new User.Builder(USER_NAME_EXISTING_USER).setPassword("password").build())
+                .replaceUser("bulkId:user1", new User.Builder("bulk_user_1").setDisplayName("replaced").build())
+                .deleteUser("bulkId:user2")
+                .build();
+
+        BulkResponse response = bulkProvisioner.execute(request, accessToken);
+
+        assertThat(response.getResults(), hasSize(4));
+        assertThat(response.getResults().get(0).getStatus(), is(equalTo(201)));
+        assertThat(response.getResults().get(1).getStatus(), is(equalTo(409)));
+        assertThat(response.getResults().get(2).getStatus(), is(equalTo(200)));
+        assertThat(response.getResults().get(3).getStatus(), is(equalTo(409)));
+        assertThat(response.getErrors(), is(equalTo(2L)));
+        String userId = response.getResults().get(0).getResource().getId();
+        assertThat(OSIAM_CONNECTOR.getUser(userId, accessToken).getDisplayName(), is(equalTo("replaced")));
+    }
+
+    @Test
+    public void processing_stops_once_fail_on_errors_is_reached() {
+        BulkRequest request = new BulkRequest.Builder()
+                .setFailOnErrors(1)
+                .createUser("user1", new User.Builder(USER_NAME_EXISTING_USER).setPassword("password").build())
+                .replaceUser("bulkId:user1", new User.Builder(USER_NAME_EXISTING_USER).build())
+                .createUser("user2", new User.Builder("bulk_user_2").setPassword("password").build())
+                .build();
+
+        BulkResponse response = bulkProvisioner.execute(request, accessToken);
+
+        assertThat(response.getResults(), hasSize(1));
+        assertThat(response.getResults().get(0).getStatus(), is(equalTo(409)));
+        long totalResults = OSIAM_CONNECTOR.searchUsers(new QueryBuilder()
+                .filter("userName eq \"bulk_user_2\"")
+                .build(), accessToken).getTotalResults();
+        assertThat(totalResults, is(equalTo(0L)));
+    }
+
+    @Test
+    public void group_members_can_be_referenced_by_bulk_id() {
+        BulkRequest request = new BulkRequest.Builder()
+                .createUser("user1", new User.Builder("bulk_member").setPassword("password").build())
+                .createGroup("group1", new Group.Builder("bulk_group")
+                        .addMember(new MemberRef.Builder().setValue("bulkId:user1").build())
+                        .build())
+                .build();
+
+        BulkResponse response = bulkProvisioner.execute(request, accessToken);
+
+        assertThat(response.getErrors(), is(equalTo(0L)));
+        String userId = response.getResults().get(0).getResource().getId();
+        String groupId = response.getResults().get(1).getResource().getId();
+        Group groupInDb = OSIAM_CONNECTOR.getGroup(groupId, accessToken);
+        assertThat(groupInDb.getMembers(), hasSize(1));
+        assertThat(groupInDb.getMembers().iterator().next().getValue(), is(equalTo(userId)));
+    }
+
+    @Test
+    public void throughput_of_bulk_provisioning_and_single_calls_is_reported() throws IOException {
+        assumeTrue(USERS > 0);
+        long singleCalls = System.nanoTime();
+        for (int i = 0; i < USERS; i++) {
+            OSIAM_CONNECTOR.createUser(new User.Builder("single_user_" + i).build(), accessToken);
+        }
+        singleCalls = System.nanoTime() - singleCalls;
+
+        BulkRequest.Builder builder = new BulkRequest.Builder();
+        for (int i = 0; i < USERS; i++) {
+            builder.createUser("user" + i, new User.Builder("bulk_user_" + i).build());
+        }
+        long bulk = System.nanoTime();
+        BulkResponse response = bulkProvisioner.execute(builder.build(), accessToken);
+        bulk = System.nanoTime() - bulk;
+
+        assertThat(response.getErrors(), is(equalTo(0L)));
+        report(singleCalls, bulk);
+    }
+
+    private void report(long singleCalls, long bulk) throws IOException {
+        Files.createDirectories(REPORT.getParent());
+        try (PrintStream out = new PrintStream(Files.newOutputStream(REPORT), true, "UTF-8")) {
+            for (PrintStream stream : new PrintStream[]{System.out, out}) {
+                stream.printf("Provisioning %d users%n", USERS);
+                stream.printf("  single calls: %6d ms, %8.1f users/s%n",
+                        TimeUnit.NANOSECONDS.toMillis(singleCalls), throughput(singleCalls));
+                stream.printf("  bulk:         %6d ms, %8.1f users/s (chunk size %d, concurrency %d)%n",
+                        TimeUnit.NANOSECONDS.toMillis(bulk), throughput(bulk),
+                        BulkProvisioner.DEFAULT_CHUNK_SIZE, MAX_CONCURRENCY);
+            }
+        }
+    }
+
+    private double throughput(long nanos) {
+        return USERS / (nanos / 1e9);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import org.osiam.resources.scim.Group;
+import org.osiam.resources.scim.MemberRef;
+import org.osiam.resources.scim.Resource;
+import org.osiam.resources.scim.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A batch of user and group operations modelled after a SCIM 2.0 bulk request, executed by a
+ * {@link BulkProvisioner}.
+ * <p>
+ * Resources created in the same request can be referenced with {@code bulkId:<bulkId>}, both as the id of a later
+ * replace or delete and as the value of a group member.
+ */
+public final class BulkRequest {
+
+    public static final String BULK_ID_PREFIX = "bulkId:";
+
+    public enum Method {
+        POST, PUT, DELETE
+    }
+
+    private final List<Operation> operations;
+    private final int failOnErrors;
+
+    private BulkRequest(Builder builder) {
+        this.operations = Collections.unmodifiableList(new ArrayList<>(builder.operations));
+        this.failOnErrors = builder.failOnErrors;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * Returns the number of errors after which the remaining operations are skipped, or 0 if all operations are
+     * executed regardless of errors.
+     */
+    public int getFailOnErrors() {
+        return failOnErrors;
+    }
+
+    /**
+     * A single operation of a bulk request.
+     */
+    public static final class Operation {
+
+        private final Method method;
+        private final String bulkId;
+        private final String endpoint;
+        private final String id;
+        private final Resource data;
+
+        private Operation(Method method, String bulkId, String endpoint, String id, Resource data) {
+            this.method = method;
+            this.bulkId = bulkId;
+            this.endpoint = endpoint;
+            this.id = id;
+            this.data = data;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        public String getBulkId() {
+            return bulkId;
+        }
+
+        /**
+         * Returns the path of the operation, e.g. {@code /Users} or {@code /Groups/bulkId:group1}.
+         */
+        public String getPath() {
+            return id == null ? "/" + endpoint : "/" + endpoint + "/" + id;
+        }
+
+        String getEndpoint() {
+            return endpoint;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        Resource getData() {
+            return data;
+        }
+
+        /**
+         * Returns the bulk ids this operation refers to.
+         */
+        Set<String> getReferencedBulkIds() {
+            Set<String> bulkIds = new LinkedHashSet<>();
+            if (isBulkIdReference(id)) {
+                bulkIds.add(id.substring(BULK_ID_PREFIX.length()));
+            }
+            if (data instanceof Group && ((Group) data).getMembers() != null) {
+                for (MemberRef member : ((Group) data).getMembers()) {
+                    if (isBulkIdReference(member.getValue())) {
+                        bulkIds.add(member.getValue().substring(BULK_ID_PREFIX.length()));
+                    }
+                }
+            }
+            return bulkIds;
+        }
+
+        static boolean isBulkIdReference(String value) {
+            return value != null && value.startsWith(BULK_ID_PREFIX);
+        }
+    }
+
+    public static class Builder {
+
+        private final List<Operation> operations = new ArrayList<>();
+        private int failOnErrors;
+
+        /**
+         * Skips the remaining operations once the given number of operations has failed. Operations of the same chunk
+         * as the failing one are still completed, see {@link BulkProvisioner#execute(BulkRequest,
+         * org.osiam.client.oauth.AccessToken)}.
+         */
+        public Builder setFailOnErrors(int failOnErrors) {
+            this.failOnErrors = failOnErrors;
+            return this;
+        }
+
+        public Builder createUser(String bulkId, User user) {
+            operations.add(new Operation(Method.POST, bulkId, "Users", null, user));
+            return this;
+        }
+
+        public Builder replaceUser(String id, User user) {
+            operations.add(new Operation(Method.PUT, null, "Users", id, user));
+            return this;
+        }
+
+        public Builder deleteUser(String id) {
+            operations.add(new Operation(Method.DELETE, null, "Users", id, null));
+            return this;
+        }
+
+        public Builder createGroup(String bulkId, Group group) {
+            operations.add(new Operation(Method.POST, bulkId, "Groups", null, group));
+            return this;
+        }
+
+        public Builder replaceGroup(String id, Group group) {
+            operations.add(new Operation(Method.PUT, null, "Groups", id, group));
+            return this;
+        }
+
+        public Builder deleteGroup(String id) {
+            operations.add(new Operation(Method.DELETE, null, "Groups", id, null));
+            return this;
+        }
+
+        public BulkRequest build() {
+            return new BulkRequest(this);
+        }
+    }
+}
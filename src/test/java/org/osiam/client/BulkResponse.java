@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import org.osiam.resources.scim.Resource;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of the executed operations of a {@link BulkRequest}, in the order of the request. Operations that were
+ * skipped because of {@link BulkRequest#getFailOnErrors()} have no result.
+ */
+public final class BulkResponse {
+
+    private final List<Result> results;
+
+    BulkResponse(List<Result> results) {
+        this.results = Collections.unmodifiableList(results);
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public long getErrors() {
+        return results.stream().filter(result -> !result.isSuccess()).count();
+    }
+
+    /**
+     * The result of a single operation, with the HTTP status code OSIAM answered with.
+     */
+    public static final class Result {
+
+        private final BulkRequest.Operation operation;
+        private final int status;
+        private final Resource resource;
+        private final String error;
+
+        Result(BulkRequest.Operation operation, int status, Resource resource, String error) {
+            this.operation = operation;
+            this.status = status;
+            this.resource = resource;
+            this.error = error;
+        }
+
+        public BulkRequest.Operation getOperation() {
+            return operation;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns the created or replaced resource, or null for deletes and failed operations.
+         */
+        public Resource getResource() {
+            return resource;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return status < 400;
+        }
+    }
+}
@@ -59,7 +59,7 @@ public class ClientManagementIT extends AbstractIntegrationTestBase {
 
     @Before
     public void setup() {
-        accessToken = OSIAM_CONNECTOR.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
+        accessToken = ACCESS_TOKEN_CACHE.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
     }
 
     @Test
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import org.osiam.client.oauth.AccessToken;
+import org.osiam.client.oauth.Scope;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Retrieves access tokens like {@link OsiamConnector}, but lets concurrent identical grant requests share one
+ * request and its access token.
+ * <p>
+ * The first caller performs the grant, callers with the same credentials and scopes that arrive while it is in
+ * flight wait for its result, including its exception. Nothing is cached after the grant has completed, see
+ * {@link AccessTokenCache} for that.
+ */
+public class CoalescingTokenRetriever {
+
+    private final OsiamConnector osiamConnector;
+    private final ConcurrentMap<List<?>, CompletableFuture<AccessToken>> inFlightGrants =
+            new ConcurrentHashMap<>();
+    private final AtomicLong grants = new AtomicLong();
+    private final AtomicLong coalescedCalls = new AtomicLong();
+
+    public CoalescingTokenRetriever(OsiamConnector osiamConnector) {
+        this.osiamConnector = osiamConnector;
+    }
+
+    /**
+     * Retrieves an access token with the client credentials grant.
+     */
+    public AccessToken retrieveAccessToken(Scope... scopes) {
+        return retrieveAccessToken(Arrays.asList(null, null, Arrays.asList(scopes)),
+                () -> osiamConnector.retrieveAccessToken(scopes));
+    }
+
+    /**
+     * Retrieves an access token with the resource owner password credentials grant.
+     */
+    public AccessToken retrieveAccessToken(String userName, String password, Scope... scopes) {
+        return retrieveAccessToken(Arrays.asList(userName, password, Arrays.asList(scopes)),
+                () -> osiamConnector.retrieveAccessToken(userName, password, scopes));
+    }
+
+    /**
+     * Retrieves an access token with the given grant, unless a grant with an equal key is in flight.
+     *
+     * @param key   identifies the grant, e.g. by its credentials and scopes
+     * @param grant performs the grant request
+     */
+    public AccessToken retrieveAccessToken(List<?> key, Supplier<AccessToken> grant) {
+        return coalesce(key, grant);
+    }
+
+    /**
+     * Returns the number of grant requests sent to OSIAM.
+     */
+    public long getGrants() {
+        return grants.get();
+    }
+
+    /**
+     * Returns the number of calls that joined a grant in flight instead of sending their own.
+     */
+    public long getCoalescedCalls() {
+        return coalescedCalls.get();
+    }
+
+    private AccessToken coalesce(List<?> key, Supplier<AccessToken> grant) {
+        CompletableFuture<AccessToken> ownGrant = new CompletableFuture<>();
+        CompletableFuture<AccessToken> inFlightGrant = inFlightGrants.putIfAbsent(key, ownGrant);
+        if (inFlightGrant != null) {
+            coalescedCalls.incrementAndGet();
+            try {
+                return inFlightGrant.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw (RuntimeException) e.getCause();
+            }
+        }
+        try {
+            grants.incrementAndGet();
+            AccessToken accessToken = grant.get();
+            ownGrant.complete(accessToken);
+            return accessToken;
+        } catch (Throwable e) {
+            ownGrant.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightGrants.remove(key, ownGrant);
+        }
+    }
+}
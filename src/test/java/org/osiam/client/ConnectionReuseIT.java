@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osiam.client.oauth.Scope;
+import org.osiam.resources.scim.User;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("/context.xml")
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        ImmutableDataSetTestExecutionListener.class})
+@ImmutableDataSet("/database_seed.xml")
+public class ConnectionReuseIT extends AbstractIntegrationTestBase {
+
+    private static final int CALLS = 100;
+
+    @Before
+    public void setUp() {
+        accessToken = ACCESS_TOKEN_CACHE.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
+    }
+
+    @Test
+    public void sequential_get_user_calls_reuse_the_connection() throws Exception {
+        try (PooledHttpClient httpClient = new PooledHttpClient.Builder(OSIAM_ENDPOINT).build()) {
+            for (int i = 0; i < CALLS; i++) {
+                User user = httpClient.getUser(VALID_USER_ID, accessToken);
+                assertThat(user.getId(), is(equalTo(VALID_USER_ID)));
+            }
+
+            // the server may close a connection after a number of requests, but not after every one
+            assertThat(httpClient.getOpenedConnections(), is(lessThan(CALLS / 10)));
+        }
+    }
+
+    @Test
+    public void concurrent_get_user_calls_do_not_exceed_the_connections_per_route() throws Exception {
+        int threads = 8;
+        int maxConnectionsPerRoute = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (PooledHttpClient httpClient = new PooledHttpClient.Builder(OSIAM_ENDPOINT)
+                .setMaxConnectionsPerRoute(maxConnectionsPerRoute)
+                .build()) {
+            AtomicInteger peakLeasedConnections = new AtomicInteger();
+            List<Future<User>> users = new ArrayList<>();
+            for (int i = 0; i < threads * CALLS; i++) {
+                users.add(executor.submit(() -> {
+                    User user = httpClient.getUser(VALID_USER_ID, accessToken);
+                    peakLeasedConnections.accumulateAndGet(httpClient.getLeasedConnections(), Math::max);
+                    return user;
+                }));
+            }
+            while (!users.stream().allMatch(Future::isDone)) {
+                peakLeasedConnections.accumulateAndGet(httpClient.getLeasedConnections(), Math::max);
+                Thread.sleep(1);
+            }
+            for (Future<User> user : users) {
+                assertThat(user.get().getId(), is(equalTo(VALID_USER_ID)));
+            }
+
+            assertThat(peakLeasedConnections.get(), is(greaterThan(0)));
+            assertThat(peakLeasedConnections.get(), is(lessThanOrEqualTo(maxConnectionsPerRoute)));
+            assertThat(httpClient.getOpenedConnections(), is(lessThan(threads * CALLS / 10)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void every_call_opens_a_connection_without_keep_alive() throws Exception {
+        int calls = 10;
+        try (PooledHttpClient httpClient = new PooledHttpClient.Builder(OSIAM_ENDPOINT)
+                .setKeepAlive(0)
+                .build()) {
+            for (int i = 0; i < calls; i++) {
+                httpClient.getUser(VALID_USER_ID, accessToken);
+            }
+
+            assertThat(httpClient.getOpenedConnections(), is(equalTo(calls)));
+        }
+    }
+
+    @Test
+    public void idle_connections_are_evicted() throws Exception {
+        long idleTimeout = 500;
+        try (PooledHttpClient httpClient = new PooledHttpClient.Builder(OSIAM_ENDPOINT)
+                .setIdleTimeout(idleTimeout)
+                .build()) {
+            httpClient.getUser(VALID_USER_ID, accessToken);
+            assertThat(httpClient.getIdleConnections(), is(equalTo(1)));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (httpClient.getIdleConnections() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+
+            assertThat(httpClient.getIdleConnections(), is(equalTo(0)));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.osiam.client;
+
+import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.SortedTable;
+import org.dbunit.dataset.xml.FlatXmlDataSetBuilder;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Helpers to inspect DbUnit data sets and the tables they are seeded into.
+ */
+public final class DataSets {
+
+    public static final String TEAR_DOWN = "/database_tear_down.xml";
+
+    private static List<String> managedTables;
+
+    private DataSets() {
+    }
+
+    /**
+     * Returns the tables that are cleared after every test, as listed in {@value #TEAR_DOWN}.
+     */
+    public static synchronized List<String> managedTables() {
+        if (managedTables == null) {
+            try {
+                managedTables = Collections.unmodifiableList(Arrays.asList(new FlatXmlDataSetBuilder()
+                        .build(DataSets.class.getResource(TEAR_DOWN))
+                        .getTableNames()));
+            } catch (DataSetException e) {
+                throw new IllegalStateException("Unable to read the managed tables from " + TEAR_DOWN, e);
+            }
+        }
+        return managedTables;
+    }
+
+    /**
+     * Calculates a hex encoded SHA-1 hash over the table names, column names and values of the given data set, in
+     * the order the data set returns them.
+     */
+    public static String fingerprint(IDataSet dataSet) throws DataSetException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ITableIterator iterator = dataSet.iterator();
+        while (iterator.next()) {
+            update(digest, iterator.getTable());
+        }
+        return String.format("%040x", new BigInteger(1, digest.digest()));
+    }
+
+    /**
+     * Calculates a hash over the current content of all managed tables, independent of the order in which the
+     * database returns their rows.
+     */
+    public static String checksum(IDatabaseConnection connection) throws DatabaseUnitException, SQLException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String table : managedTables()) {
+            update(digest, new SortedTable(connection.createTable(table)));
+        }
+        return String.format("%040x", new BigInteger(1, digest.digest()));
+    }
+
+    /**
+     * Returns the number of rows of every managed table, as a cheap replacement for {@link #checksum} on large data
+     * sets.
+     */
+    public static String rowCounts(IDatabaseConnection connection) throws DatabaseUnitException, SQLException {
+        StringBuilder rowCounts = new StringBuilder();
+        for (String table : managedTables()) {
+            rowCounts.append(table).append('=').append(connection.getRowCount(table)).append(' ');
+        }
+        return rowCounts.toString().trim();
+    }
+
+    private static void update(MessageDigest digest, ITable table) throws DataSetException {
+        Column[] columns = table.getTableMetaData().getColumns();
+        update(digest, table.getTableMetaData().getTableName());
+        for (Column column : columns) {
+            update(digest, column.getColumnName());
+        }
+        for (int row = 0; row < table.getRowCount(); row++) {
+            for (Column column : columns) {
+                update(digest, String.valueOf(table.getValue(row, column.getColumnName())));
+            }
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+}
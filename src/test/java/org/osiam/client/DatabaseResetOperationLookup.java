@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.osiam.client;
+
+import com.github.springtestdbunit.annotation.DatabaseOperation;
+import com.github.springtestdbunit.operation.DefaultDatabaseOperationLookup;
+import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.IDataSet;
+
+import java.sql.SQLException;
+
+/**
+ * Resolves the database operations of {@code @DatabaseSetup} and {@code @DatabaseTearDown}.
+ * <p>
+ * If the system property {@code database.reset} is set to {@code snapshot}, {@code CLEAN_INSERT} is replaced by a
+ * {@link SnapshotCleanInsertOperation}, which restores every data set after its first seed from a snapshot. As that
+ * truncates all managed tables before every seed anyway, {@code DELETE_ALL} does nothing in this mode. All other
+ * operations, and both of them in the default mode {@code dbunit}, are resolved by DbUnit as usual.
+ * <p>
+ * Every {@code CLEAN_INSERT} clears the {@link AccessTokenCache#shared(OsiamConnector, String) shared access token
+ * cache}, as the tokens it holds may have been revoked on the replaced data set.
+ */
+public class DatabaseResetOperationLookup extends DefaultDatabaseOperationLookup {
+
+    public static final boolean SNAPSHOT_RESET = "snapshot".equals(System.getProperty("database.reset", "dbunit"));
+
+    private static SnapshotCleanInsertOperation snapshotCleanInsert;
+
+    @Override
+    public org.dbunit.operation.DatabaseOperation get(DatabaseOperation operation) {
+        if (operation == DatabaseOperation.CLEAN_INSERT) {
+            return new ClearingAccessTokenCache(SNAPSHOT_RESET ? snapshotCleanInsert() : super.get(operation));
+        }
+        if (SNAPSHOT_RESET && operation == DatabaseOperation.DELETE_ALL) {
+            return org.dbunit.operation.DatabaseOperation.NONE;
+        }
+        return super.get(operation);
+    }
+
+    private static synchronized SnapshotCleanInsertOperation snapshotCleanInsert() {
+        if (snapshotCleanInsert == null) {
+            snapshotCleanInsert = new SnapshotCleanInsertOperation(DataSets.managedTables());
+        }
+        return snapshotCleanInsert;
+    }
+
+    private static final class ClearingAccessTokenCache extends org.dbunit.operation.DatabaseOperation {
+
+        private final org.dbunit.operation.DatabaseOperation seed;
+
+        private ClearingAccessTokenCache(org.dbunit.operation.DatabaseOperation seed) {
+            this.seed = seed;
+        }
+
+        @Override
+        public void execute(IDatabaseConnection connection, IDataSet dataSet)
+                throws DatabaseUnitException, SQLException {
+            AccessTokenCache.clearShared();
+            seed.execute(connection, dataSet);
+        }
+    }
+}
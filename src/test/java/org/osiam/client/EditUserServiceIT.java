@@ -71,7 +71,7 @@ public class EditUserServiceIT extends AbstractIntegrationTestBase {
 
     @Before
     public void setup() {
-        accessToken = OSIAM_CONNECTOR.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
+        accessToken = ACCESS_TOKEN_CACHE.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
     }
 
     @Test(expected = BadRequestException.class)
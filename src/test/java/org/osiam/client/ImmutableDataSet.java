@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.osiam.client;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares that no test of the annotated class modifies the database.
+ * <p>
+ * The data set is seeded once before the first test of the class and removed after the last one. After every test
+ * the content of the managed tables is compared with a checksum taken right after seeding, and the test fails if it
+ * has changed. For JUnit tests, register the {@link ImmutableDataSetTestExecutionListener} and don't use
+ * {@code @DatabaseSetup} or {@code @DatabaseTearDown}. Spock specifications extending {@code AbstractIT} must not call
+ * {@code setupDatabase}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ImmutableDataSet {
+
+    /**
+     * The location of the flat XML data set, resolved like the value of {@code @DatabaseSetup}.
+     */
+    String value();
+
+    /**
+     * Whether the users and groups of a {@link SyntheticDataSet} of {@code -Ddataset.scale} users are added after
+     * seeding. As a full checksum over a large data set is too slow, only the number of rows per table is verified
+     * after every test in that case.
+     */
+    boolean synthetic() default false;
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.osiam.client;
+
+import com.github.springtestdbunit.annotation.DatabaseOperation;
+import com.github.springtestdbunit.dataset.FlatXmlDataSetLoader;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.IDataSet;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+
+import javax.sql.DataSource;
+
+/**
+ * Seeds and verifies the data set of test classes annotated with {@link ImmutableDataSet}.
+ */
+public class ImmutableDataSetTestExecutionListener extends AbstractTestExecutionListener {
+
+    private static final String CHECKSUM = ImmutableDataSetTestExecutionListener.class.getName() + ".checksum";
+    private static final DatabaseResetOperationLookup DATABASE_OPERATIONS = new DatabaseResetOperationLookup();
+
+    @Override
+    public void beforeTestClass(TestContext testContext) throws Exception {
+        if (testContext.getTestClass().isAnnotationPresent(ImmutableDataSet.class)) {
+            seed(testContext);
+        }
+    }
+
+    @Override
+    public void afterTestMethod(TestContext testContext) throws Exception {
+        String expectedChecksum = (String) testContext.getAttribute(CHECKSUM);
+        if (expectedChecksum == null) {
+            return;
+        }
+        IDatabaseConnection connection = connection(testContext);
+        String actualChecksum;
+        try {
+            actualChecksum = checksum(testContext, connection);
+        } finally {
+            connection.close();
+        }
+        if (!expectedChecksum.equals(actualChecksum)) {
+            // seed again, so that only the offending test fails
+            seed(testContext);
+            throw new AssertionError(String.format("%s.%s modified the immutable data set of its class",
+                    testContext.getTestClass().getSimpleName(), testContext.getTestMethod().getName()));
+        }
+    }
+
+    @Override
+    public void afterTestClass(TestContext testContext) throws Exception {
+        if (testContext.removeAttribute(CHECKSUM) == null) {
+            return;
+        }
+        IDataSet tearDown = new FlatXmlDataSetLoader().loadDataSet(testContext.getTestClass(), DataSets.TEAR_DOWN);
+        IDatabaseConnection connection = connection(testContext);
+        try {
+            DATABASE_OPERATIONS.get(DatabaseOperation.DELETE_ALL).execute(connection, tearDown);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void seed(TestContext testContext) throws Exception {
+        ImmutableDataSet immutableDataSet = testContext.getTestClass().getAnnotation(ImmutableDataSet.class);
+        IDataSet dataSet = new FlatXmlDataSetLoader().loadDataSet(testContext.getTestClass(), immutableDataSet.value());
+        IDatabaseConnection connection = connection(testContext);
+        try {
+            DATABASE_OPERATIONS.get(DatabaseOperation.CLEAN_INSERT).execute(connection, dataSet);
+            if (isSynthetic(testContext)) {
+                new SyntheticDataSet(SyntheticDataSet.scale())
+                        .insert(testContext.getApplicationContext().getBean("dataSource", DataSource.class));
+            }
+            testContext.setAttribute(CHECKSUM, checksum(testContext, connection));
+        } finally {
+            connection.close();
+        }
+    }
+
+    private String checksum(TestContext testContext, IDatabaseConnection connection) throws Exception {
+        return isSynthetic(testContext) ? DataSets.rowCounts(connection) : DataSets.checksum(connection);
+    }
+
+    private boolean isSynthetic(TestContext testContext) {
+        return testContext.getTestClass().getAnnotation(ImmutableDataSet.class).synthetic()
+                && SyntheticDataSet.scale() > 0;
+    }
+
+    private IDatabaseConnection connection(TestContext testContext) {
+        return testContext.getApplicationContext().getBean("dbUnitDatabaseConnection", IDatabaseConnection.class);
+    }
+}
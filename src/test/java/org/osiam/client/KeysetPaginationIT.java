@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osiam.client.oauth.Scope;
+import org.osiam.client.query.QueryBuilder;
+import org.osiam.resources.scim.SCIMSearchResult;
+import org.osiam.resources.scim.User;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Pages through a synthetic data set with {@link KeysetSearch} and compares the latency per page with
+ * {@code startIndex} paging. Only runs if {@code -Ddataset.scale} is set, e.g. to {@code 100000}. The mean latency of
+ * the deepest keyset pages may be at most {@code -Dkeyset.max-latency-factor} times that of the first ones, default:
+ * 3.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("/context.xml")
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        ImmutableDataSetTestExecutionListener.class})
+@ImmutableDataSet(value = "/database_seed_minimal.xml", synthetic = true)
+public class KeysetPaginationIT extends AbstractIntegrationTestBase {
+
+    private static final int PAGE_SIZE = Integer.getInteger("keyset.page-size", 100);
+    private static final int BUCKETS = 10;
+    private static final double MAX_LATENCY_FACTOR =
+            Double.parseDouble(System.getProperty("keyset.max-latency-factor", "3"));
+    private static final String FILTER = "userName sw \"synthetic\"";
+    private static final Path REPORT = Paths.get("target/failsafe-reports/keyset-pagination.txt");
+
+    private final SyntheticDataSet dataSet = new SyntheticDataSet(SyntheticDataSet.scale());
+
+    private KeysetSearch<User> keysetSearch;
+
+    @Before
+    public void setUp() {
+        assumeTrue(dataSet.getUsers() > 0);
+        accessToken = ACCESS_TOKEN_CACHE.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
+        keysetSearch = KeysetSearch.users(OSIAM_CONNECTOR, accessToken);
+    }
+
+    @Test
+    public void keyset_paging_visits_every_user_once_in_order() {
+        int index = 0;
+        KeysetSearch.Page<User> page = keysetSearch.firstPage(FILTER, PAGE_SIZE);
+        while (true) {
+            for (User user : page.getResources()) {
+                assertThat(user.getUserName(), is(equalTo(dataSet.userName(index++))));
+            }
+            if (page.getNextPageToken() == null) {
+                break;
+            }
+            page = keysetSearch.page(page.getNextPageToken());
+        }
+
+        assertThat(index, is(equalTo(dataSet.getUsers())));
+    }
+
+    @Test
+    public void keyset_paging_scrolls_backward() {
+        assumeTrue(dataSet.getUsers() > 2 * PAGE_SIZE);
+        KeysetSearch.Page<User> firstPage = keysetSearch.firstPage(FILTER, PAGE_SIZE);
+        KeysetSearch.Page<User> secondPage = keysetSearch.page(firstPage.getNextPageToken());
+        KeysetSearch.Page<User> thirdPage = keysetSearch.page(secondPage.getNextPageToken());
+
+        assertThat(firstPage.getPreviousPageToken(), is(nullValue()));
+        assertThat(userNames(keysetSearch.page(thirdPage.getPreviousPageToken()).getResources()),
+                is(equalTo(userNames(secondPage.getResources()))));
+        KeysetSearch.Page<User> backToFirstPage = keysetSearch.page(secondPage.getPreviousPageToken());
+        assertThat(userNames(backToFirstPage.getResources()), is(equalTo(userNames(firstPage.getResources()))));
+        assertThat(backToFirstPage.getPreviousPageToken(), is(nullValue()));
+        assertThat(backToFirstPage.getNextPageToken(), is(notNullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void an_invalid_continuation_token_is_rejected() {
+        keysetSearch.page("not a token");
+    }
+
+    @Test
+    public void keyset_page_latency_stays_flat_deep_into_the_result_set() throws IOException {
+        int pages = (dataSet.getUsers() + PAGE_SIZE - 1) / PAGE_SIZE;
+        assumeTrue(pages >= BUCKETS);
+        long[] keyset = new long[pages];
+        long[] startIndex = new long[pages];
+
+        // warm up both modes, so that neither of them pays for a cold cache in its first bucket alone
+        keysetSearch.firstPage(FILTER, PAGE_SIZE);
+        searchPage(0);
+
+        // interleaved, so that both modes see the same state of the server at every depth
+        KeysetSearch.Page<User> page = null;
+        for (int i = 0; i < pages; i++) {
+            long start = System.nanoTime();
+            page = page == null
+                    ? keysetSearch.firstPage(FILTER, PAGE_SIZE)
+                    : keysetSearch.page(page.getNextPageToken());
+            keyset[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            SCIMSearchResult<User> result = searchPage(i);
+            startIndex[i] = System.nanoTime() - start;
+            assertThat(result.getResources().isEmpty(), is(false));
+        }
+
+        double[] keysetBuckets = buckets(keyset);
+        double[] startIndexBuckets = buckets(startIndex);
+        report(keysetBuckets, startIndexBuckets);
+        assertThat(keysetBuckets[BUCKETS - 1], is(lessThanOrEqualTo(keysetBuckets[0] * MAX_LATENCY_FACTOR)));
+        assertThat(keysetBuckets[BUCKETS - 1], is(lessThan(startIndexBuckets[BUCKETS - 1])));
+    }
+
+    private SCIMSearchResult<User> searchPage(int page) {
+        return OSIAM_CONNECTOR.searchUsers(new QueryBuilder()
+                .filter(FILTER)
+                .ascending("userName")
+                .startIndex(page * PAGE_SIZE + 1)
+                .count(PAGE_SIZE)
+                .build(), accessToken);
+    }
+
+    private double[] buckets(long[] latencies) {
+        double[] buckets = new double[BUCKETS];
+        int[] counts = new int[BUCKETS];
+        for (int i = 0; i < latencies.length; i++) {
+            int bucket = (int) ((long) i * BUCKETS / latencies.length);
+            buckets[bucket] += latencies[i];
+            counts[bucket]++;
+        }
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (counts[bucket] > 0) {
+                buckets[bucket] /= counts[bucket] * (double) TimeUnit.MILLISECONDS.toNanos(1);
+            }
+        }
+        return buckets;
+    }
+
+    private void report(double[] keyset, double[] startIndex) throws IOException {
+        Files.createDirectories(REPORT.getParent());
+        try (PrintStream out = new PrintStream(Files.newOutputStream(REPORT), true, "UTF-8")) {
+            for (PrintStream stream : new PrintStream[]{System.out, out}) {
+                stream.printf("Mean latency per page of %d users, by depth into %d users%n", PAGE_SIZE,
+                        dataSet.getUsers());
+                stream.printf("  %-8s %12s %12s%n", "depth", "keyset", "startIndex");
+                for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                    stream.printf("  %3d%%     %9.1f ms %9.1f ms%n", bucket * 100 / BUCKETS, keyset[bucket],
+                            startIndex[bucket]);
+                }
+            }
+        }
+    }
+
+    private static String userNames(List<User> users) {
+        StringBuilder userNames = new StringBuilder();
+        for (User user : users) {
+            userNames.append(user.getUserName()).append(',');
+        }
+        return userNames.toString();
+    }
+}
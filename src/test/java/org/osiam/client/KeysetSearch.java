@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.osiam.client.oauth.AccessToken;
+import org.osiam.client.query.Query;
+import org.osiam.client.query.QueryBuilder;
+import org.osiam.resources.scim.Group;
+import org.osiam.resources.scim.Resource;
+import org.osiam.resources.scim.SCIMSearchResult;
+import org.osiam.resources.scim.User;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Pages through search results by the last seen sort key instead of {@code startIndex}, so that deep pages don't
+ * turn into {@code OFFSET} scans on the database.
+ * <p>
+ * Every page hands out opaque continuation tokens for the next and the previous page, which encode the filter, the
+ * page size and the sort key to continue from. The sort key has to be unique, which is why users are ordered by
+ * {@code userName} and groups by {@code displayName}.
+ */
+public class KeysetSearch<T extends Resource> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .setVisibility(PropertyAccessor.FIELD, Visibility.ANY);
+
+    private final Function<Query, SCIMSearchResult<T>> search;
+    private final String sortKey;
+    private final Function<T, String> sortKeyOf;
+
+    KeysetSearch(Function<Query, SCIMSearchResult<T>> search, String sortKey, Function<T, String> sortKeyOf) {
+        this.search = search;
+        this.sortKey = sortKey;
+        this.sortKeyOf = sortKeyOf;
+    }
+
+    public static KeysetSearch<User> users(OsiamConnector osiamConnector, AccessToken accessToken) {
+        return new KeysetSearch<>(query -> osiamConnector.searchUsers(query, accessToken), "userName",
+                User::getUserName);
+    }
+
+    public static KeysetSearch<Group> groups(OsiamConnector osiamConnector, AccessToken accessToken) {
+        return new KeysetSearch<>(query -> osiamConnector.searchGroups(query, accessToken), "displayName",
+                Group::getDisplayName);
+    }
+
+    /**
+     * Returns the first page of the resources matching the given filter, which may be null.
+     */
+    public Page<T> firstPage(String filter, int count) {
+        return page(new Cursor(filter, count, true, null));
+    }
+
+    /**
+     * Returns the page the given continuation token points to.
+     *
+     * @throws IllegalArgumentException if the token wasn't handed out by a {@link Page}
+     */
+    public Page<T> page(String continuationToken) {
+        return page(Cursor.decode(continuationToken));
+    }
+
+    private Page<T> page(Cursor cursor) {
+        QueryBuilder queryBuilder = new QueryBuilder().count(cursor.count);
+        if (cursor.forward) {
+            queryBuilder.ascending(sortKey);
+        } else {
+            queryBuilder.descending(sortKey);
+        }
+        String filter = filter(cursor);
+        if (filter != null) {
+            queryBuilder.filter(filter);
+        }
+        SCIMSearchResult<T> result = search.apply(queryBuilder.build());
+
+        List<T> resources = new ArrayList<>(result.getResources());
+        boolean more = result.getTotalResults() > resources.size();
+        if (!cursor.forward) {
+            Collections.reverse(resources);
+        }
+        if (resources.isEmpty()) {
+            return new Page<>(resources, null, null);
+        }
+        String first = sortKeyOf.apply(resources.get(0));
+        String last = sortKeyOf.apply(resources.get(resources.size() - 1));
+        boolean hasNext = !cursor.forward || more;
+        boolean hasPrevious = cursor.forward ? cursor.key != null : more;
+        return new Page<>(resources,
+                hasNext ? new Cursor(cursor.filter, cursor.count, true, last).encode() : null,
+                hasPrevious ? new Cursor(cursor.filter, cursor.count, false, first).encode() : null);
+    }
+
+    private String filter(Cursor cursor) {
+        if (cursor.key == null) {
+            return cursor.filter;
+        }
+        String keyFilter = String.format("%s %s \"%s\"", sortKey, cursor.forward ? "gt" : "lt",
+                cursor.key.replace("\\", "\\\\").replace("\"", "\\\""));
+        return cursor.filter == null ? keyFilter : "(" + cursor.filter + ") and " + keyFilter;
+    }
+
+    /**
+     * A page of resources, in the order of the sort key, with the tokens to continue with.
+     */
+    public static final class Page<T> {
+
+        private final List<T> resources;
+        private final String nextPageToken;
+        private final String previousPageToken;
+
+        private Page(List<T> resources, String nextPageToken, String previousPageToken) {
+            this.resources = Collections.unmodifiableList(resources);
+            this.nextPageToken = nextPageToken;
+            this.previousPageToken = previousPageToken;
+        }
+
+        public List<T> getResources() {
+            return resources;
+        }
+
+        /**
+         * Returns the token of the next page, or null if this is the last page.
+         */
+        public String getNextPageToken() {
+            return nextPageToken;
+        }
+
+        /**
+         * Returns the token of the previous page, or null if this is the first page.
+         */
+        public String getPreviousPageToken() {
+            return previousPageToken;
+        }
+    }
+
+    private static final class Cursor {
+
+        private String filter;
+        private int count;
+        private boolean forward;
+        private String key;
+
+        @SuppressWarnings("unused") // used by Jackson
+        private Cursor() {
+        }
+
+        private Cursor(String filter, int count, boolean forward, String key) {
+            this.filter = filter;
+            this.count = count;
+            this.forward = forward;
+            this.key = key;
+        }
+
+        private String encode() {
+            try {
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(MAPPER.writeValueAsBytes(this));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static Cursor decode(String continuationToken) {
+            try {
+                return MAPPER.readValue(Base64.getUrlDecoder().decode(continuationToken), Cursor.class);
+            } catch (IOException | IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid continuation token: " + continuationToken, e);
+            }
+        }
+    }
+}
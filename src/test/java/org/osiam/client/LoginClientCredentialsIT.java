@@ -27,6 +27,9 @@ import com.github.springtestdbunit.DbUnitTestExecutionListener;
 import com.github.springtestdbunit.annotation.DatabaseOperation;
 import com.github.springtestdbunit.annotation.DatabaseSetup;
 import com.github.springtestdbunit.annotation.DatabaseTearDown;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.osiam.client.exception.UnauthorizedException;
@@ -37,9 +40,31 @@ import org.springframework.test.context.TestExecutionListeners;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration("/context.xml")
@@ -67,4 +92,86 @@ public class LoginClientCredentialsIT extends AbstractIntegrationTestBase {
 
     }
 
+    @Test
+    public void concurrent_identical_client_credentials_grants_share_one_request() throws Exception {
+        int threads = 500;
+        AtomicInteger grantRequests = new AtomicInteger();
+        CountDownLatch releaseGrant = new CountDownLatch(1);
+        // counts the requests that reach the token endpoint and holds them until every caller has joined the first
+        HttpServer tokenEndpoint = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        tokenEndpoint.setExecutor(Executors.newCachedThreadPool());
+        tokenEndpoint.createContext("/", exchange -> {
+            grantRequests.incrementAndGet();
+            try {
+                releaseGrant.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            forwardToOsiam(exchange);
+        });
+        tokenEndpoint.start();
+        OsiamConnector connector = new OsiamConnector.Builder()
+                .withEndpoint("http://localhost:" + tokenEndpoint.getAddress().getPort())
+                .setClientId(CLIENT_ID)
+                .setClientSecret(CLIENT_SECRET)
+                .setClientRedirectUri("http://localhost:5000/oauth2")
+                .build();
+        CoalescingTokenRetriever tokenRetriever = new CoalescingTokenRetriever(connector);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<AccessToken>> accessTokens = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                accessTokens.add(executor.submit(() -> tokenRetriever.retrieveAccessToken(Scope.ADMIN)));
+            }
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            while (grantRequests.get() == 0 || tokenRetriever.getCoalescedCalls() < threads - 1) {
+                assertTrue("Not all callers joined the grant in flight.", System.currentTimeMillis() < deadline);
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            releaseGrant.countDown();
+
+            Set<AccessToken> sharedAccessTokens = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Future<AccessToken> accessToken : accessTokens) {
+                sharedAccessTokens.add(accessToken.get());
+            }
+            // every caller gets the very instance of the single grant, not just an equal token
+            assertThat(sharedAccessTokens, hasSize(1));
+            assertThat(grantRequests.get(), is(equalTo(1)));
+        } finally {
+            releaseGrant.countDown();
+            executor.shutdownNow();
+            tokenEndpoint.stop(0);
+            ((ExecutorService) tokenEndpoint.getExecutor()).shutdownNow();
+        }
+    }
+
+    private static void forwardToOsiam(HttpExchange exchange) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(OSIAM_ENDPOINT + exchange.getRequestURI())
+                .openConnection();
+        connection.setRequestMethod(exchange.getRequestMethod());
+        for (String header : Arrays.asList("Accept", "Authorization", "Content-Type")) {
+            String value = exchange.getRequestHeaders().getFirst(header);
+            if (value != null) {
+                connection.setRequestProperty(header, value);
+            }
+        }
+        byte[] requestBody = IOUtils.toByteArray(exchange.getRequestBody());
+        if (requestBody.length > 0) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(requestBody);
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        byte[] responseBody = in == null ? new byte[0] : IOUtils.toByteArray(in);
+        if (connection.getContentType() != null) {
+            exchange.getResponseHeaders().set("Content-Type", connection.getContentType());
+        }
+        exchange.sendResponseHeaders(status, responseBody.length == 0 ? -1 : responseBody.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(responseBody);
+        }
+        exchange.close();
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.osiam.client;
+
+import org.osiam.client.oauth.AccessToken;
+import org.osiam.client.query.Query;
+import org.osiam.resources.scim.Group;
+import org.osiam.resources.scim.SCIMSearchResult;
+import org.osiam.resources.scim.User;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates lazily over all results of a search, page by page, as an alternative to
+ * {@link OsiamConnector#getAllUsers(AccessToken)} and {@link OsiamConnector#getAllGroups(AccessToken)}, which load
+ * every resource at once.
+ * <p>
+ * While the current page is consumed, the next one is fetched in the background. So at most two pages are held in
+ * memory at any time. The page size is the {@code count} of the given query, which should also define a sort order, so
+ * that the pages are stable.
+ */
+public class PagedSearch<T> implements Iterator<T>, AutoCloseable {
+
+    private static final ExecutorService PREFETCHER = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "paged-search-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Function<Query, SCIMSearchResult<T>> search;
+
+    private Query currentQuery;
+    private List<T> currentPage = Collections.emptyList();
+    private int position;
+    private Future<SCIMSearchResult<T>> nextPage;
+
+    PagedSearch(Function<Query, SCIMSearchResult<T>> search, Query firstPage) {
+        this.search = search;
+        this.currentQuery = firstPage;
+        this.nextPage = PREFETCHER.submit(() -> search.apply(firstPage));
+    }
+
+    public static PagedSearch<User> users(OsiamConnector osiamConnector, Query firstPage, AccessToken accessToken) {
+        return new PagedSearch<>(query -> osiamConnector.searchUsers(query, accessToken), firstPage);
+    }
+
+    public static PagedSearch<Group> groups(OsiamConnector osiamConnector, Query firstPage, AccessToken accessToken) {
+        return new PagedSearch<>(query -> osiamConnector.searchGroups(query, accessToken), firstPage);
+    }
+
+    /**
+     * Returns the remaining results as a sequential stream, which has to be closed if it is not consumed completely.
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (position >= currentPage.size()) {
+            if (nextPage == null) {
+                return false;
+            }
+            advance();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.get(position++);
+    }
+
+    /**
+     * Returns the number of resources this iterator currently holds, i.e. the resources of the current page and of
+     * the prefetched page, if it has already been received.
+     */
+    public int bufferedResources() {
+        int buffered = currentPage.size();
+        if (nextPage != null && nextPage.isDone() && !nextPage.isCancelled()) {
+            try {
+                buffered += nextPage.get().getResources().size();
+            } catch (InterruptedException | ExecutionException e) {
+                // a failed prefetch holds no resources
+            }
+        }
+        return buffered;
+    }
+
+    /**
+     * Cancels the prefetch of the next page by interrupting it. A search request that has already been sent isn't
+     * aborted by that, but its result is discarded.
+     */
+    @Override
+    public void close() {
+        if (nextPage != null) {
+            nextPage.cancel(true);
+            nextPage = null;
+        }
+        currentPage = Collections.emptyList();
+    }
+
+    private void advance() {
+        SCIMSearchResult<T> result;
+        try {
+            result = nextPage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while fetching the next page", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        currentPage = result.getResources();
+        position = 0;
+        long lastIndex = result.getStartIndex() + currentPage.size() - 1;
+        if (currentPage.isEmpty() || lastIndex >= result.getTotalResults()) {
+            nextPage = null;
+        } else {
+            Query query = currentQuery.nextPage();
+            currentQuery = query;
+            nextPage = PREFETCHER.submit(() -> search.apply(query));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.osiam.client;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects connection pool metrics of the test-side data source and appends them to a report file when the pool is
+ * closed, i.e. when the Spring context shuts down at the end of the test run. The first pool of a JVM that is closed
+ * truncates the report, so that it doesn't contain the metrics of earlier runs.
+ */
+public class PoolMetricsTrackerFactory implements MetricsTrackerFactory {
+
+    private static final Set<Path> truncatedReports = new HashSet<>();
+
+    private final Path report;
+
+    public PoolMetricsTrackerFactory(String report) {
+        this.report = Paths.get(report);
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        return new PoolMetricsTracker(poolName, poolStats);
+    }
+
+    private class PoolMetricsTracker implements IMetricsTracker {
+
+        private final String poolName;
+        private final PoolStats poolStats;
+
+        private final LongAdder acquisitions = new LongAdder();
+        private final LongAdder acquisitionNanos = new LongAdder();
+        private final AtomicLong maxAcquisitionNanos = new AtomicLong();
+        private final LongAdder usageMillis = new LongAdder();
+        private final LongAdder createdConnections = new LongAdder();
+        private final LongAdder creationMillis = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final AtomicInteger maxActiveConnections = new AtomicInteger();
+
+        private PoolMetricsTracker(String poolName, PoolStats poolStats) {
+            this.poolName = poolName;
+            this.poolStats = poolStats;
+        }
+
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            createdConnections.increment();
+            creationMillis.add(connectionCreatedMillis);
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquisitions.increment();
+            acquisitionNanos.add(elapsedAcquiredNanos);
+            maxAcquisitionNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+            maxActiveConnections.accumulateAndGet(poolStats.getActiveConnections(), Math::max);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            usageMillis.add(elapsedBorrowedMillis);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.increment();
+        }
+
+        @Override
+        public void close() {
+            synchronized (truncatedReports) {
+                write(truncatedReports.add(report.toAbsolutePath())
+                        ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND);
+            }
+        }
+
+        private void write(StandardOpenOption mode) {
+            long count = acquisitions.sum();
+            try {
+                Files.createDirectories(report.toAbsolutePath().getParent());
+                try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(report, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode))) {
+                    writer.printf("Connection pool %s%n", poolName);
+                    writer.printf("  connections created:        %d (%.1f ms on average)%n", createdConnections.sum(),
+                            average(creationMillis.sum(), createdConnections.sum()));
+                    writer.printf("  connections acquired:       %d%n", count);
+                    writer.printf("  acquisition latency (avg):  %.3f ms%n",
+                            average(acquisitionNanos.sum(), count) / TimeUnit.MILLISECONDS.toNanos(1));
+                    writer.printf("  acquisition latency (max):  %.3f ms%n",
+                            (double) maxAcquisitionNanos.get() / TimeUnit.MILLISECONDS.toNanos(1));
+                    writer.printf("  connection usage (avg):     %.1f ms%n", average(usageMillis.sum(), count));
+                    writer.printf("  active connections (max):   %d%n", maxActiveConnections.get());
+                    writer.printf("  acquisition timeouts:       %d%n", timeouts.sum());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private double average(long sum, long count) {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.osiam.client.oauth.AccessToken;
+import org.osiam.client.query.Query;
+import org.osiam.resources.helper.UserDeserializer;
+import org.osiam.resources.scim.Group;
+import org.osiam.resources.scim.SCIMSearchResult;
+import org.osiam.resources.scim.User;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads, searches, creates, replaces and deletes users and groups over a pool of persistent HTTP connections whose
+ * size, keep-alive and eviction can be configured.
+ * <p>
+ * The connection handling of {@link OsiamConnector} is internal to connector4java and only exposes connect and read
+ * timeouts. This client gives the tests and the {@link org.osiam.client.load.LoadTest load test}, which sends all
+ * SCIM requests through it, control over the pool and reports how many connections it had to open, so that
+ * connection churn becomes visible. Access tokens are still retrieved with the connector.
+ */
+public class PooledHttpClient implements Closeable {
+
+    private final String endpoint;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final AtomicInteger openedConnections = new AtomicInteger();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new SimpleModule("userDeserializerModule")
+                    .addDeserializer(User.class, new UserDeserializer(User.class)));
+
+    private PooledHttpClient(Builder builder) {
+        this.endpoint = builder.endpoint;
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", new CountingSocketFactory(PlainConnectionSocketFactory.getSocketFactory()))
+                .register("https", new CountingSocketFactory(SSLConnectionSocketFactory.getSocketFactory()))
+                .build();
+        connectionManager = new PoolingHttpClientConnectionManager(socketFactories);
+        connectionManager.setMaxTotal(builder.maxConnections);
+        connectionManager.setDefaultMaxPerRoute(builder.maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(builder.validateAfterInactivity);
+
+        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(builder.connectTimeout)
+                        .setSocketTimeout(builder.readTimeout)
+                        .setConnectionRequestTimeout(builder.connectTimeout)
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(builder.idleTimeout, TimeUnit.MILLISECONDS)
+                // runs before the response is decompressed, so that the bytes on the wire are counted
+                .addInterceptorFirst((HttpResponseInterceptor) (response, context) -> {
+                    if (response.getEntity() != null) {
+                        response.setEntity(new CountingEntity(response.getEntity()));
+                    }
+                });
+        if (!builder.compression) {
+            httpClientBuilder.disableContentCompression();
+        }
+        if (builder.keepAlive > 0) {
+            httpClientBuilder.setKeepAliveStrategy(new BoundedKeepAliveStrategy(builder.keepAlive));
+        } else {
+            httpClientBuilder.setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE);
+        }
+        httpClient = httpClientBuilder.build();
+    }
+
+    public User getUser(String id, AccessToken accessToken) {
+        return get("/Users/" + id, accessToken, User.class);
+    }
+
+    public Group getGroup(String id, AccessToken accessToken) {
+        return get("/Groups/" + id, accessToken, Group.class);
+    }
+
+    public User createUser(User user, AccessToken accessToken) {
+        return execute(withBody(new HttpPost(endpoint + "/Users"), user), accessToken, User.class);
+    }
+
+    public User replaceUser(String id, User user, AccessToken accessToken) {
+        return execute(withBody(new HttpPut(endpoint + "/Users/" + id), user), accessToken, User.class);
+    }
+
+    public void deleteUser(String id, AccessToken accessToken) {
+        execute(new HttpDelete(endpoint + "/Users/" + id), accessToken, Void.class);
+    }
+
+    public Group createGroup(Group group, AccessToken accessToken) {
+        return execute(withBody(new HttpPost(endpoint + "/Groups"), group), accessToken, Group.class);
+    }
+
+    public Group replaceGroup(String id, Group group, AccessToken accessToken) {
+        return execute(withBody(new HttpPut(endpoint + "/Groups/" + id), group), accessToken, Group.class);
+    }
+
+    public void deleteGroup(String id, AccessToken accessToken) {
+        execute(new HttpDelete(endpoint + "/Groups/" + id), accessToken, Void.class);
+    }
+
+    /**
+     * Searches for users. Only the attributes selected with {@link org.osiam.client.query.QueryBuilder#attributes}
+     * are transferred and deserialized.
+     */
+    public SCIMSearchResult<User> searchUsers(Query query, AccessToken accessToken) {
+        return execute(new HttpGet(searchUri("/Users", query)), accessToken,
+                mapper.getTypeFactory().constructParametricType(SCIMSearchResult.class, User.class));
+    }
+
+    /**
+     * Searches for groups. Only the attributes selected with {@link org.osiam.client.query.QueryBuilder#attributes}
+     * are transferred and deserialized.
+     */
+    public SCIMSearchResult<Group> searchGroups(Query query, AccessToken accessToken) {
+        return execute(new HttpGet(searchUri("/Groups", query)), accessToken,
+                mapper.getTypeFactory().constructParametricType(SCIMSearchResult.class, Group.class));
+    }
+
+    /**
+     * Returns the number of connections opened since this client was created.
+     */
+    public int getOpenedConnections() {
+        return openedConnections.get();
+    }
+
+    /**
+     * Returns the number of connections that are currently kept open for reuse.
+     */
+    public int getIdleConnections() {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    /**
+     * Returns the number of connections that are currently used by a request.
+     */
+    public int getLeasedConnections() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    /**
+     * Returns the number of response body bytes received since this client was created, after decompression.
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * Returns the number of response body bytes received on the wire since this client was created, i.e. before
+     * decompression.
+     */
+    public long getWireBytes() {
+        return wireBytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    private <T> T get(String path, AccessToken accessToken, Class<T> type) {
+        return execute(new HttpGet(endpoint + path), accessToken, type);
+    }
+
+    private String searchUri(String path, Query query) {
+        try {
+            URIBuilder uri = new URIBuilder(endpoint + path);
+            addParameter(uri, "attributes", query.getAttributes());
+            addParameter(uri, "filter", query.getFilter());
+            addParameter(uri, "sortBy", query.getSortBy());
+            if (query.getSortOrder() != null) {
+                addParameter(uri, "sortOrder", query.getSortOrder().toString().toLowerCase(Locale.ENGLISH));
+            }
+            if (query.getCount() > 0) {
+                addParameter(uri, "count", String.valueOf(query.getCount()));
+            }
+            if (query.getStartIndex() > 0) {
+                addParameter(uri, "startIndex", String.valueOf(query.getStartIndex()));
+            }
+            return uri.build().toString();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private void addParameter(URIBuilder uri, String name, String value) {
+        if (value != null && !value.isEmpty()) {
+            uri.addParameter(name, value);
+        }
+    }
+
+    private HttpEntityEnclosingRequestBase withBody(HttpEntityEnclosingRequestBase request, Object body) {
+        try {
+            request.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(body), ContentType.APPLICATION_JSON));
+            return request;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T execute(HttpRequestBase request, AccessToken accessToken, Class<T> type) {
+        return execute(request, accessToken, mapper.getTypeFactory().constructType(type));
+    }
+
+    private <T> T execute(HttpRequestBase request, AccessToken accessToken, JavaType type) {
+        request.setHeader("Authorization", "Bearer " + accessToken.getToken());
+        request.setHeader("Accept", "application/json");
+        try {
+            return httpClient.execute(request, response -> {
+                int status = response.getStatusLine().getStatusCode();
+                byte[] body = response.getEntity() != null
+                        ? EntityUtils.toByteArray(response.getEntity())
+                        : new byte[0];
+                receivedBytes.addAndGet(body.length);
+                if (status < 200 || status >= 300) {
+                    throw new IllegalStateException(String.format("%s %s failed with %s: %s",
+                            request.getMethod(), request.getURI(), response.getStatusLine(),
+                            new String(body, StandardCharsets.UTF_8)));
+                }
+                return type.hasRawClass(Void.class) || body.length == 0 ? null : mapper.<T>readValue(body, type);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds a client with the settings given by system properties, which can be overridden per client.
+     */
+    public static class Builder {
+
+        private final String endpoint;
+        private int maxConnections = Integer.getInteger("connector.pool.max-connections", 40);
+        private int maxConnectionsPerRoute = Integer.getInteger("connector.pool.max-connections-per-route", 40);
+        private int validateAfterInactivity = Integer.getInteger("connector.pool.validate-after-inactivity", 2000);
+        private long idleTimeout = Long.getLong("connector.pool.idle-timeout", 30000);
+        private long keepAlive = Long.getLong("connector.pool.keep-alive", 60000);
+        private int connectTimeout = Integer.getInteger("connector.timeout", 10000);
+        private int readTimeout = Integer.getInteger("connector.timeout", 10000);
+        private boolean compression = Boolean.getBoolean("connector.gzip");
+
+        /**
+         * @param endpoint the URL of OSIAM, e.g. {@code http://localhost:8080/osiam}
+         */
+        public Builder(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        public Builder setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        public Builder setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        /**
+         * Sets the time in milliseconds after which an idle connection is checked for being stale before it is
+         * reused.
+         */
+        public Builder setValidateAfterInactivity(int validateAfterInactivity) {
+            this.validateAfterInactivity = validateAfterInactivity;
+            return this;
+        }
+
+        /**
+         * Sets the time in milliseconds after which idle connections are closed by a background thread.
+         */
+        public Builder setIdleTimeout(long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the time in milliseconds a connection is kept alive, unless the server asks for less. 0 disables
+         * keep-alive, every request then opens a new connection.
+         */
+        public Builder setKeepAlive(long keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        public Builder setConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder setReadTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * Asks for gzip or deflate compressed responses with {@code Accept-Encoding}. Compressed responses are
+         * decompressed while they are read.
+         */
+        public Builder setCompression(boolean compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        public PooledHttpClient build() {
+            return new PooledHttpClient(this);
+        }
+    }
+
+    private static final class BoundedKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+        private final long keepAlive;
+
+        private BoundedKeepAliveStrategy(long keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long requested = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return requested > 0 ? Math.min(requested, keepAlive) : keepAlive;
+        }
+    }
+
+    private final class CountingEntity extends HttpEntityWrapper {
+
+        private CountingEntity(HttpEntity entity) {
+            super(entity);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        wireBytes.incrementAndGet();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    if (read > 0) {
+                        wireBytes.addAndGet(read);
+                    }
+                    return read;
+                }
+            };
+        }
+    }
+
+    private final class CountingSocketFactory implements ConnectionSocketFactory {
+
+        private final ConnectionSocketFactory delegate;
+
+        private CountingSocketFactory(ConnectionSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return delegate.createSocket(context);
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            openedConnections.incrementAndGet();
+            return delegate.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+        }
+    }
+}
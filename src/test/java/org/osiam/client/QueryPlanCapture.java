@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import org.osiam.client.query.Query;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Captures the execution plans of the SQL statements OSIAM runs while a search is executed.
+ * <p>
+ * On PostgreSQL the plans are logged by {@code auto_explain}, which is preloaded into every session of the database
+ * container, and read back from the CSV log. MySQL 5.7 has no {@code EXPLAIN ANALYZE}, so the statements are taken
+ * from {@code performance_schema.events_statements_history_long} and explained afterwards. Every plan is checked for
+ * sequential scans, nested loop joins over extension tables and sorts that spill to disk.
+ * <p>
+ * Capturing is switched on with {@code -Dquery.plans=true} and only used by the tests that register the
+ * {@link QueryPlanTestExecutionListener}.
+ */
+public class QueryPlanCapture {
+
+    public static final boolean ENABLED = Boolean.getBoolean("query.plans");
+
+    private static final String POSTGRES_LOG = "pg_log/postgresql.csv";
+    private static final int MESSAGE_COLUMN = 13;
+    private static final long LOG_SETTLE_MILLIS = 50;
+    private static final long LOG_TIMEOUT_MILLIS = 2000;
+
+    private static final Pattern SEQ_SCAN = Pattern.compile("Seq Scan on (\\w+)");
+    private static final Pattern NODE = Pattern.compile("^(\\s*)(->\\s*)?(.*)$");
+
+    private static volatile QueryPlanCapture current;
+
+    private final Connection connection;
+    private final Dialect dialect;
+    private final List<CapturedQuery> capturedQueries = new ArrayList<>();
+
+    QueryPlanCapture(DataSource dataSource) throws SQLException {
+        this.connection = dataSource.getConnection();
+        this.dialect = Dialect.of(connection);
+    }
+
+    /**
+     * Runs the given search and records the plans of the statements it caused, if a capture is active for the
+     * current test class.
+     */
+    public static <T> T capture(Query query, Supplier<T> search) {
+        QueryPlanCapture capture = current;
+        return capture == null ? search.get() : capture.captureSearch(query, search);
+    }
+
+    static void setCurrent(QueryPlanCapture capture) {
+        current = capture;
+    }
+
+    void enable() throws SQLException {
+        if (dialect == Dialect.POSTGRESQL) {
+            try (Statement statement = connection.createStatement()) {
+                // keep the plans of this session out of the log
+                statement.execute("SET auto_explain.log_min_duration = -1");
+                statement.execute("ALTER SYSTEM SET auto_explain.log_min_duration = 0");
+                statement.execute("SELECT pg_reload_conf()");
+            }
+        }
+    }
+
+    void disable() throws SQLException {
+        try {
+            if (dialect == Dialect.POSTGRESQL) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("ALTER SYSTEM RESET auto_explain.log_min_duration");
+                    statement.execute("SELECT pg_reload_conf()");
+                }
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Returns the queries captured since the last call and forgets them.
+     */
+    synchronized List<CapturedQuery> drain() {
+        List<CapturedQuery> drained = new ArrayList<>(capturedQueries);
+        capturedQueries.clear();
+        return drained;
+    }
+
+    private synchronized <T> T captureSearch(Query query, Supplier<T> search) {
+        long mark;
+        try {
+            mark = mark();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to start capturing query plans", e);
+        }
+        try {
+            return search.get();
+        } finally {
+            try {
+                capturedQueries.add(new CapturedQuery(query, plansSince(mark)));
+            } catch (SQLException e) {
+                throw new IllegalStateException("Unable to capture query plans", e);
+            }
+        }
+    }
+
+    private long mark() throws SQLException {
+        if (dialect == Dialect.POSTGRESQL) {
+            return postgresLogSize();
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                     "SELECT COALESCE(MAX(TIMER_END), 0) FROM performance_schema.events_statements_history_long")) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private List<Plan> plansSince(long mark) throws SQLException {
+        return dialect == Dialect.POSTGRESQL ? postgresPlansSince(mark) : mysqlPlansSince(mark);
+    }
+
+    private long postgresLogSize() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT size FROM pg_stat_file(?)")) {
+            statement.setString(1, POSTGRES_LOG);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        }
+    }
+
+    private List<Plan> postgresPlansSince(long mark) throws SQLException {
+        // the logging collector writes asynchronously, so wait until the log stops growing
+        long deadline = System.currentTimeMillis() + LOG_TIMEOUT_MILLIS;
+        long size = postgresLogSize();
+        while (System.currentTimeMillis() < deadline) {
+            sleep(LOG_SETTLE_MILLIS);
+            long newSize = postgresLogSize();
+            if (newSize == size) {
+                break;
+            }
+            size = newSize;
+        }
+        if (size <= mark) {
+            return Collections.emptyList();
+        }
+        String log;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_read_file(?, ?, ?)")) {
+            statement.setString(1, POSTGRES_LOG);
+            statement.setLong(2, mark);
+            statement.setLong(3, size - mark);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                log = resultSet.getString(1);
+            }
+        }
+        List<Plan> plans = new ArrayList<>();
+        for (List<String> record : parseCsv(log)) {
+            if (record.size() <= MESSAGE_COLUMN) {
+                continue;
+            }
+            String message = record.get(MESSAGE_COLUMN);
+            int planStart = message.indexOf("plan:\n");
+            if (message.startsWith("duration:") && planStart >= 0) {
+                String plan = message.substring(planStart + "plan:\n".length());
+                plans.add(new Plan(plan, postgresFindings(plan)));
+            }
+        }
+        return plans;
+    }
+
+    private Set<String> postgresFindings(String plan) {
+        Set<String> findings = new LinkedHashSet<>();
+        Matcher seqScan = SEQ_SCAN.matcher(plan);
+        while (seqScan.find()) {
+            findings.add("sequential scan on " + seqScan.group(1));
+        }
+        String[] lines = plan.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            Matcher node = NODE.matcher(lines[i]);
+            if (!node.matches() || !node.group(3).startsWith("Nested Loop")) {
+                continue;
+            }
+            int indent = node.group(1).length();
+            for (int j = i + 1; j < lines.length; j++) {
+                Matcher child = NODE.matcher(lines[j]);
+                if (child.matches() && child.group(2) != null && child.group(1).length() <= indent) {
+                    break;
+                }
+                if (lines[j].contains("scim_extension")) {
+                    findings.add("nested loop join on extension tables");
+                    break;
+                }
+            }
+        }
+        if (plan.contains("Sort Method: external")) {
+            findings.add("sort spilled to disk");
+        }
+        return findings;
+    }
+
+    private List<Plan> mysqlPlansSince(long mark) throws SQLException {
+        List<String> statements = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT SQL_TEXT"
+                + " FROM performance_schema.events_statements_history_long"
+                + " WHERE TIMER_START > ? AND CURRENT_SCHEMA = DATABASE() AND SQL_TEXT LIKE 'select%'"
+                + " AND THREAD_ID <> (SELECT THREAD_ID FROM performance_schema.threads"
+                + " WHERE PROCESSLIST_ID = CONNECTION_ID())"
+                + " ORDER BY TIMER_START")) {
+            statement.setLong(1, mark);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    statements.add(resultSet.getString(1));
+                }
+            }
+        }
+        List<Plan> plans = new ArrayList<>();
+        for (String sql : statements) {
+            StringBuilder plan = new StringBuilder(sql).append('\n');
+            Set<String> findings = new LinkedHashSet<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("EXPLAIN " + sql)) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                int row = 0;
+                while (resultSet.next()) {
+                    for (int column = 1; column <= metaData.getColumnCount(); column++) {
+                        plan.append(column == 1 ? "  " : " | ")
+                                .append(metaData.getColumnLabel(column)).append('=')
+                                .append(resultSet.getString(column));
+                    }
+                    plan.append('\n');
+                    String table = String.valueOf(resultSet.getString("table"));
+                    String type = resultSet.getString("type");
+                    String extra = String.valueOf(resultSet.getString("Extra"));
+                    if ("ALL".equals(type)) {
+                        findings.add("sequential scan on " + table);
+                    }
+                    // MySQL 5.7 joins with nested loops only, so flag extension tables that are not looked up by key
+                    if (row > 0 && table.startsWith("scim_extension") && ("ALL".equals(type) || "index".equals(type))) {
+                        findings.add("nested loop join on extension tables");
+                    }
+                    if (extra.contains("Using temporary") && extra.contains("Using filesort")) {
+                        findings.add("sort may spill to disk");
+                    }
+                    row++;
+                }
+            } catch (SQLException e) {
+                plan.append("  not explainable: ").append(e.getMessage()).append('\n');
+            }
+            plans.add(new Plan(plan.toString(), findings));
+        }
+        return plans;
+    }
+
+    private static List<List<String>> parseCsv(String csv) {
+        List<List<String>> records = new ArrayList<>();
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < csv.length(); i++) {
+            char c = csv.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < csv.length() && csv.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                record.add(field.toString());
+                field.setLength(0);
+                records.add(record);
+                record = new ArrayList<>();
+            } else {
+                field.append(c);
+            }
+        }
+        return records;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A search together with the plans of the statements it caused.
+     */
+    static final class CapturedQuery {
+
+        final Query query;
+        final List<Plan> plans;
+
+        private CapturedQuery(Query query, List<Plan> plans) {
+            this.query = query;
+            this.plans = plans;
+        }
+    }
+
+    static final class Plan {
+
+        final String text;
+        final Set<String> findings;
+
+        private Plan(String text, Set<String> findings) {
+            this.text = text;
+            this.findings = findings;
+        }
+    }
+}
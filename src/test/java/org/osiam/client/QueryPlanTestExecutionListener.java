@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import org.osiam.client.query.Query;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Captures the query plans of the searches a test class runs through {@link QueryPlanCapture#capture} and writes a
+ * report per test class to {@code -Dquery.plans.report-dir}. Does nothing unless {@code -Dquery.plans=true}.
+ */
+public class QueryPlanTestExecutionListener extends AbstractTestExecutionListener {
+
+    private static final Path REPORT_DIRECTORY = Paths.get(System.getProperty("query.plans.report-dir",
+            "target/failsafe-reports/query-plans"));
+
+    private QueryPlanCapture capture;
+
+    @Override
+    public void beforeTestClass(TestContext testContext) throws Exception {
+        if (!QueryPlanCapture.ENABLED) {
+            return;
+        }
+        capture = new QueryPlanCapture(testContext.getApplicationContext().getBean("dataSource", DataSource.class));
+        capture.enable();
+        QueryPlanCapture.setCurrent(capture);
+        Files.createDirectories(REPORT_DIRECTORY);
+        Files.deleteIfExists(report(testContext));
+    }
+
+    @Override
+    public void beforeTestMethod(TestContext testContext) {
+        if (capture != null) {
+            capture.drain();
+        }
+    }
+
+    @Override
+    public void afterTestMethod(TestContext testContext) throws IOException {
+        if (capture == null) {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add("== " + testContext.getTestMethod().getName());
+        for (QueryPlanCapture.CapturedQuery capturedQuery : capture.drain()) {
+            lines.add("query: " + describe(capturedQuery.query));
+            for (QueryPlanCapture.Plan plan : capturedQuery.plans) {
+                lines.add(plan.findings.isEmpty() ? "  plan:" : "  plan: FLAGGED " + String.join(", ", plan.findings));
+                for (String planLine : plan.text.split("\n")) {
+                    lines.add("    " + planLine);
+                }
+            }
+        }
+        lines.add("");
+        Files.write(report(testContext), lines, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void afterTestClass(TestContext testContext) throws Exception {
+        if (capture == null) {
+            return;
+        }
+        QueryPlanCapture.setCurrent(null);
+        try {
+            capture.disable();
+        } finally {
+            capture = null;
+        }
+    }
+
+    private Path report(TestContext testContext) {
+        return REPORT_DIRECTORY.resolve(testContext.getTestClass().getSimpleName() + ".txt");
+    }
+
+    private String describe(Query query) {
+        return String.format("filter=%s sortBy=%s startIndex=%s count=%s",
+                query.getFilter(), query.getSortBy(), query.getStartIndex(), query.getCount());
+    }
+}
@@ -36,6 +36,17 @@ import org.springframework.test.context.TestExecutionListeners;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
@@ -69,12 +80,7 @@ public class RefreshTokenGrantIT extends AbstractIntegrationTestBase {
 
     @Test
     public void refreshing_an_access_token_when_expired() throws InterruptedException {
-        OsiamConnector connector = new OsiamConnector.Builder()
-                .withEndpoint(OSIAM_ENDPOINT)
-                .setClientId("short-living-client")
-                .setClientSecret(CLIENT_SECRET)
-                .setClientRedirectUri("http://localhost:5000/oauth2")
-                .build();
+        OsiamConnector connector = shortLivingConnector();
         AccessToken shortLivingAccessToken = connector.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
         waitForAccessTokenToExpire(shortLivingAccessToken);
 
@@ -89,6 +95,81 @@ public class RefreshTokenGrantIT extends AbstractIntegrationTestBase {
         assertNotEquals("The access tokens are equal.", shortLivingAccessToken.getToken(), accessTokenRF.getToken());
     }
 
+    @Test
+    public void a_managed_access_token_is_refreshed_before_it_expires() throws InterruptedException {
+        OsiamConnector connector = shortLivingConnector();
+        long refreshMargin = 500;
+
+        try (AccessTokenManager accessTokenManager = new AccessTokenManager(connector,
+                () -> connector.retrieveAccessToken("marissa", "koala", Scope.ADMIN), refreshMargin)) {
+            long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(3);
+            while (System.currentTimeMillis() < end) {
+                assertFalse("The managed access token has expired.", accessTokenManager.getAccessToken().isExpired());
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+
+            assertTrue("The access token was not refreshed in the background.",
+                    accessTokenManager.getRefreshes() >= 2);
+        }
+    }
+
+    @Test
+    public void a_refresh_margin_longer_than_the_token_lifetime_does_not_refresh_in_a_loop() throws Exception {
+        OsiamConnector connector = shortLivingConnector();
+        long refreshMargin = TimeUnit.SECONDS.toMillis(10);
+
+        try (AccessTokenManager accessTokenManager = new AccessTokenManager(connector,
+                () -> connector.retrieveAccessToken("marissa", "koala", Scope.ADMIN), refreshMargin)) {
+            TimeUnit.SECONDS.sleep(3);
+
+            // a token living 1s is refreshed after half of its lifetime, i.e. about 6 times in 3s
+            assertTrue("The access token was refreshed " + accessTokenManager.getRefreshes() + " times in 3s.",
+                    accessTokenManager.getRefreshes() <= 10);
+            assertFalse("The managed access token has expired.", accessTokenManager.getAccessToken().isExpired());
+        }
+    }
+
+    @Test
+    public void concurrent_refreshes_of_a_managed_access_token_are_coalesced() throws Exception {
+        int threads = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // a long living token, so that no scheduled refresh interferes with the ones triggered here
+        try (AccessTokenManager accessTokenManager = new AccessTokenManager(OSIAM_CONNECTOR,
+                () -> OSIAM_CONNECTOR.retrieveAccessToken("marissa", "koala", Scope.ADMIN), 0)) {
+            List<Future<CompletableFuture<AccessToken>>> refreshes = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                refreshes.add(executor.submit(() -> {
+                    start.await();
+                    return accessTokenManager.refresh();
+                }));
+            }
+            start.countDown();
+
+            Set<CompletableFuture<AccessToken>> distinctRefreshes = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<String> tokens = new HashSet<>();
+            for (Future<CompletableFuture<AccessToken>> refresh : refreshes) {
+                distinctRefreshes.add(refresh.get());
+                tokens.add(refresh.get().get().getToken());
+            }
+            assertTrue("The refreshes were not coalesced.", distinctRefreshes.size() < threads);
+            assertEquals("The coalesced refreshes returned different tokens.",
+                    distinctRefreshes.size(), tokens.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private OsiamConnector shortLivingConnector() {
+        return new OsiamConnector.Builder()
+                .withEndpoint(OSIAM_ENDPOINT)
+                .setClientId("short-living-client")
+                .setClientSecret(CLIENT_SECRET)
+                .setClientRedirectUri("http://localhost:5000/oauth2")
+                .build();
+    }
+
     private void waitForAccessTokenToExpire(final AccessToken shortLivingAccessToken) throws InterruptedException {
         int tries = 0;
         while (tries <= 100 && !shortLivingAccessToken.isExpired()) {
@@ -66,7 +66,7 @@ import static org.junit.Assert.fail;
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration("/context.xml")
 @TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
-        DbUnitTestExecutionListener.class})
+        DbUnitTestExecutionListener.class, QueryPlanTestExecutionListener.class})
 @DatabaseTearDown(value = "/database_tear_down.xml", type = DatabaseOperation.DELETE_ALL)
 public class SearchUserServiceIT extends AbstractIntegrationTestBase {
 
@@ -79,7 +79,7 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
 
     @Before
     public void setUp() {
-        accessToken = OSIAM_CONNECTOR.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
+        accessToken = ACCESS_TOKEN_CACHE.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
     }
 
     @Test
@@ -88,7 +88,7 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
         String userName = "bjensen";
         Query query = new QueryBuilder().filter("userName eq \"" + userName + "\"").build();
 
-        SCIMSearchResult<User> result = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        SCIMSearchResult<User> result = searchUsers(query);
 
         assertThat(result.getTotalResults(), is(equalTo(1L)));
         User transmittedUser = result.getResources().get(0);
@@ -99,7 +99,7 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
     @DatabaseSetup("/database_seeds/SearchUserServiceIT/user_by_username.xml")
     public void search_for_user_by_nonexistent_username_with_query_string_fails() {
         Query query = new QueryBuilder().filter("userName eq \"" + INVALID_STRING + "\"").build();
-        SCIMSearchResult<User> result = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        SCIMSearchResult<User> result = searchUsers(query);
         assertThat(result.getTotalResults(), is(equalTo(0L)));
     }
 
@@ -108,7 +108,7 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
     public void search_for_all_users_ordered_by_user_name_with_query_builder_works()
             throws UnsupportedEncodingException {
         Query query = new QueryBuilder().ascending("userName").build();
-        queryResult = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        queryResult = searchUsers(query);
 
         ArrayList<String> sortedUserNames = new ArrayList<>();
         sortedUserNames.add("bjensen");
@@ -137,7 +137,7 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
         String email = "bjensen@example.com";
         Query query = new QueryBuilder().filter("emails.value eq \"" + email + "\"").build();
 
-        SCIMSearchResult<User> result = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        SCIMSearchResult<User> result = searchUsers(query);
 
         assertThat(result.getTotalResults(), is(equalTo(1L)));
         User transmittedUser = result.getResources().get(0);
@@ -153,7 +153,7 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
 
         String email = "bjensen@example.com";
         Query query = new QueryBuilder().filter("emails.value eq " + email + "").build();
-        OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        searchUsers(query);
     }
 
     @Test
@@ -161,7 +161,7 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
     public void search_for_all_users_ordered_by_last_modified_with_query_builder_works()
             throws UnsupportedEncodingException {
         Query query = new QueryBuilder().ascending("meta.lastModified").build();
-        SCIMSearchResult<User> result = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        SCIMSearchResult<User> result = searchUsers(query);
 
         ArrayList<String> sortedUserNames = new ArrayList<>();
         sortedUserNames.add("marissa");
@@ -184,7 +184,7 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
     public void search_for_user_by_complex_query() {
         Query query = new QueryBuilder().filter("userName eq \"user1\" and name.formatted eq \"formatted1\""
                 + " and emails eq \"email1@other.com\" and extension:stringValue eq \"Hello 1\"").build();
-        queryResult = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        queryResult = searchUsers(query);
         assertThat(queryResult.getTotalResults(), is(equalTo(1L)));
     }
 
@@ -231,7 +231,7 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
                 + "(userName eq \"marissa\" or userName eq \"hsimpson\")";
         Query query = new QueryBuilder().filter(filter).build();
 
-        queryResult = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        queryResult = searchUsers(query);
         assertEquals(2, queryResult.getTotalResults());
         assertThatQueryResultContainsUser("marissa");
         assertThatQueryResultContainsUser("hsimpson");
@@ -263,13 +263,29 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
         assertEquals(111, allUsers.size());
     }
 
+    @Test
+    @DatabaseSetup("/database_seeds/SearchUserServiceIT/database_seed_over_100_user.xml")
+    public void iterate_over_all_users_page_by_page_if_over_hundert_user_exists() {
+        Query firstPage = new QueryBuilder().ascending("userName").count(ITEMS_PER_PAGE).build();
+        Set<String> userIds = new HashSet<>();
+
+        try (PagedSearch<User> users = PagedSearch.users(OSIAM_CONNECTOR, firstPage, accessToken)) {
+            while (users.hasNext()) {
+                userIds.add(users.next().getId());
+                assertThat(users.bufferedResources() <= 2 * ITEMS_PER_PAGE, is(true));
+            }
+        }
+
+        assertEquals(111, userIds.size());
+    }
+
     @Test
     @DatabaseSetup("/database_seeds/SearchUserServiceIT/database_seed_groups.xml")
     public void searching_for_users_belonging_to_a_specific_group_by_displayname() {
         Query query = new QueryBuilder().filter("groups.display eq \"test_group01\"").build();
         Set<String> expectedUserNames = new HashSet<>(Arrays.asList("bjensen", "jcambell", "adavies"));
 
-        queryResult = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        queryResult = searchUsers(query);
 
         assertThat(queryResult.getResources().size(), is(equalTo(expectedUserNames.size())));
         for (User user : queryResult.getResources()) {
@@ -283,7 +299,7 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
         Query query = new QueryBuilder().filter(
                 "groups.display eq \"test_group01\" and groups.display eq \"test_group02\"").build();
 
-        queryResult = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        queryResult = searchUsers(query);
 
         Set<String> expectedUserNames = new HashSet<>(Arrays.asList("bjensen", "adavies"));
         assertThat(queryResult.getResources().size(), is(equalTo(expectedUserNames.size())));
@@ -298,7 +314,7 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
         Query query = new QueryBuilder().filter("groups eq \"69e1a5dc-89be-4343-976c-b5541af249f4\"").build();
         Set<String> expectedUserNames = new HashSet<>(Arrays.asList("bjensen", "jcambell", "adavies"));
 
-        queryResult = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        queryResult = searchUsers(query);
 
         assertThat(queryResult.getResources().size(), is(equalTo(expectedUserNames.size())));
         for (User user : queryResult.getResources()) {
@@ -310,14 +326,14 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
     @DatabaseSetup("/database_seeds/SearchUserServiceIT/database_seed.xml")
     public void search_for_user_by_password_with_query_string_fails() {
         Query query = new QueryBuilder().filter("password eq \"irrelevant\"").build();
-        OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        searchUsers(query);
     }
 
     @Test(expected = BadRequestException.class)
     @DatabaseSetup("/database_seeds/SearchUserServiceIT/database_seed.xml")
     public void search_for_user_by_non_exisitng_field_with_query_string_fails() {
         Query query = new QueryBuilder().filter(INVALID_STRING + " eq \"" + INVALID_STRING + "\"").build();
-        OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        searchUsers(query);
     }
 
     @Test
@@ -325,7 +341,7 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
     public void search_for_user_with_just_some_fields() {
         Query query = new QueryBuilder().filter("username eq \"gparker\"")
                 .attributes("userName, emails, nickName").build();
-        SCIMSearchResult<User> searchResults = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        SCIMSearchResult<User> searchResults = searchUsers(query);
 
         assertThat(searchResults.getTotalResults(), is(1L));
         User user = searchResults.getResources().get(0);
@@ -339,7 +355,7 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
         Query queryString = new QueryBuilder()
                 .filter("meta.created gt \"2011-10-10T00:00:00.000\" and userName eq \"user1\"")
                 .attributes("userName, displayName, extension").build();
-        List<User> users = OSIAM_CONNECTOR.searchUsers(queryString, accessToken).getResources();
+        List<User> users = searchUsers(queryString).getResources();
         assertThat(users.size(), is(1));
         User user = users.get(0);
         assertThat(user.getEmails().size(), is(0));
@@ -370,11 +386,11 @@ public class SearchUserServiceIT extends AbstractIntegrationTestBase {
     }
 
     private void whenSearchIsDoneByString(Query query) {
-        queryResult = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        queryResult = searchUsers(query);
     }
 
     private void whenSearchedIsDoneByQuery(Query query) {
-        queryResult = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        queryResult = searchUsers(query);
     }
 
     private void assertThatQueryResultContainsValidUser() {
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.osiam.client;
+
+import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.operation.DatabaseOperation;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A replacement for DbUnit's {@code CLEAN_INSERT} that seeds every distinct data set only once per test run.
+ * <p>
+ * The first time a data set is seeded, it is inserted with DbUnit and the resulting tables are copied into snapshot
+ * tables. Every later seed of the same data set truncates the managed tables and copies the snapshot back with
+ * {@code INSERT ... SELECT}, which stays inside the database server.
+ */
+public class SnapshotCleanInsertOperation extends DatabaseOperation {
+
+    private static final String SNAPSHOT_TABLE_PREFIX = "snap_";
+
+    private static final Set<String> snapshots = new HashSet<>();
+    private static boolean leftoversDropped;
+
+    private final List<String> managedTables;
+
+    /**
+     * @param managedTables all tables that are reset before a data set is restored
+     */
+    public SnapshotCleanInsertOperation(List<String> managedTables) {
+        this.managedTables = managedTables;
+    }
+
+    @Override
+    public void execute(IDatabaseConnection connection, IDataSet dataSet) throws DatabaseUnitException, SQLException {
+        Connection jdbcConnection = connection.getConnection();
+        Dialect dialect = Dialect.of(jdbcConnection);
+        String fingerprint = DataSets.fingerprint(dataSet).substring(0, 10);
+        Set<String> tables = new LinkedHashSet<>(Arrays.asList(dataSet.getTableNames()));
+
+        synchronized (snapshots) {
+            if (!leftoversDropped) {
+                dropSnapshotTables(jdbcConnection);
+                leftoversDropped = true;
+            }
+            truncate(jdbcConnection, dialect);
+            if (snapshots.contains(fingerprint)) {
+                restore(jdbcConnection, dialect, fingerprint, tables);
+            } else {
+                DatabaseOperation.INSERT.execute(connection, dataSet);
+                snapshot(jdbcConnection, fingerprint, tables);
+                snapshots.add(fingerprint);
+            }
+        }
+    }
+
+    private void truncate(Connection connection, Dialect dialect) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (dialect == Dialect.POSTGRESQL) {
+                statement.execute("TRUNCATE " + String.join(", ", managedTables));
+            } else {
+                statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+                try {
+                    for (String table : managedTables) {
+                        statement.execute("TRUNCATE TABLE " + table);
+                    }
+                } finally {
+                    statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+                }
+            }
+        }
+    }
+
+    private void restore(Connection connection, Dialect dialect, String fingerprint, Set<String> tables)
+            throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (dialect == Dialect.MYSQL) {
+                statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+            }
+            try {
+                for (String table : tables) {
+                    statement.execute("INSERT INTO " + table
+                            + " SELECT * FROM " + snapshotTable(fingerprint, table));
+                }
+            } finally {
+                if (dialect == Dialect.MYSQL) {
+                    statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+                }
+            }
+        }
+    }
+
+    private void snapshot(Connection connection, String fingerprint, Set<String> tables) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String table : tables) {
+                String snapshotTable = snapshotTable(fingerprint, table);
+                statement.execute("DROP TABLE IF EXISTS " + snapshotTable);
+                statement.execute("CREATE TABLE " + snapshotTable + " AS SELECT * FROM " + table);
+            }
+        }
+    }
+
+    private void dropSnapshotTables(Connection connection) throws SQLException {
+        List<String> snapshotTables = new ArrayList<>();
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet resultSet = metaData.getTables(connection.getCatalog(), null, SNAPSHOT_TABLE_PREFIX + "%",
+                new String[]{"TABLE"})) {
+            while (resultSet.next()) {
+                snapshotTables.add(resultSet.getString("TABLE_NAME"));
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (String snapshotTable : snapshotTables) {
+                statement.execute("DROP TABLE IF EXISTS " + snapshotTable);
+            }
+        }
+    }
+
+    private String snapshotTable(String fingerprint, String table) {
+        return SNAPSHOT_TABLE_PREFIX + fingerprint + "_" + table.toLowerCase(Locale.ENGLISH);
+    }
+}
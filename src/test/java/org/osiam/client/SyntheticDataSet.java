@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates a deterministic data set of arbitrary size and writes it straight into the OSIAM schema. It consists of
+ * users with names, emails and extension values, and of groups the users are members of.
+ * <p>
+ * Every user is derived from the seed and its index, so its id, name, emails and extension values are the same
+ * regardless of the scale. Its internal ids and its group memberships aren't, as they depend on the number of groups,
+ * which grows with the scale. The rows are written in chunks of {@code -Ddataset.chunk-size} users, with {@code COPY} on PostgreSQL and with batched
+ * inserts on MySQL. The generated resources use internal ids starting at {@value #FIRST_INTERNAL_ID}, so they don't
+ * collide with the flat XML seeds. Seed the client and the admin user first, e.g. with
+ * {@code /database_seed_minimal.xml}.
+ */
+public class SyntheticDataSet {
+
+    public static final String EXTENSION_URN = "urn:org.osiam:scim:extensions:synthetic";
+
+    /**
+     * The password of all generated users.
+     */
+    public static final String PASSWORD = "koala";
+
+    private static final long FIRST_INTERNAL_ID = 1_000_000_000L;
+    private static final int USERS_PER_GROUP = 10;
+    private static final int MAX_MEMBERSHIPS = 3;
+    private static final int MAX_EMAILS = 3;
+    private static final int CHUNK_SIZE = Integer.getInteger("dataset.chunk-size", 5000);
+    private static final String PASSWORD_HASH = "$2a$13$CfkpeagYWq4kIuugqj/xCOi5LuI864wTuFShXvRFWHbSni1Rcgw/a";
+    private static final long FIRST_CREATED = 1262304000000L; // 2010-01-01T00:00:00Z
+    private static final long CREATED_RANGE = TimeUnit.DAYS.toMillis(8 * 365);
+    private static final long MODIFIED_RANGE = TimeUnit.DAYS.toMillis(365);
+
+    private static final String[] GIVEN_NAMES = {"Anna", "Ben", "Clara", "David", "Emma", "Felix", "Greta", "Hugo",
+            "Ida", "Jonas", "Karla", "Leon", "Mia", "Noah", "Olga", "Paul", "Rosa", "Simon", "Tilda", "Uwe"};
+    private static final String[] FAMILY_NAMES = {"Adams", "Becker", "Cooper", "Dietrich", "Evans", "Fischer",
+            "Garcia", "Hoffmann", "Ivanova", "Jensen", "Klein", "Lopez", "Meyer", "Nowak", "Owens", "Palmer",
+            "Quinn", "Richter", "Schmidt", "Thomson", "Wagner", "Young", "Zimmermann"};
+    private static final String[] LOCALES = {"de_DE", "en_US", "en_GB", "fr_FR", "es_ES"};
+    private static final String[] TIMEZONES = {"UTC", "Europe/Berlin", "America/New_York", "Asia/Tokyo"};
+    private static final String[] EMAIL_TYPES = {"work", "home", "other"};
+    private static final String[] GENDERS = {"female", "male", "diverse"};
+
+    private static final String[] EXTENSION_FIELDS = {"gender", "age", "newsletter", "birthday"};
+    private static final String[] EXTENSION_FIELD_TYPES = {"STRING", "INTEGER", "BOOLEAN", "DATE_TIME"};
+
+    private final int users;
+    private final int groups;
+    private final long seed;
+
+    /**
+     * Creates a data set with the given number of users and the seed given by {@code -Ddataset.seed}.
+     */
+    public SyntheticDataSet(int users) {
+        this(users, Long.getLong("dataset.seed", 4711L));
+    }
+
+    public SyntheticDataSet(int users, long seed) {
+        this.users = users;
+        this.groups = users == 0 ? 0 : Math.max(1, users / USERS_PER_GROUP);
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the number of users requested with {@code -Ddataset.scale}, or 0 if no synthetic data should be
+     * generated.
+     */
+    public static int scale() {
+        return Integer.getInteger("dataset.scale", 0);
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public int getGroups() {
+        return groups;
+    }
+
+    public String userName(int index) {
+        return String.format("synthetic%07d", index);
+    }
+
+    public String userId(int index) {
+        return uuid("user", index);
+    }
+
+    public String groupName(int index) {
+        return String.format("synthetic_group%07d", index);
+    }
+
+    public String groupId(int index) {
+        return uuid("group", index);
+    }
+
+    /**
+     * Inserts the data set with a connection of the given data source, committing after every chunk.
+     */
+    public void insert(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                insert(connection);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private void insert(Connection connection) throws SQLException {
+        Dialect dialect = Dialect.of(connection);
+        TableWriter extensions = writer(connection, dialect, "scim_extension", "internal_id", "urn");
+        TableWriter extensionFields = writer(connection, dialect, "scim_extension_field",
+                "internal_id", "required", "name", "type", "extension");
+        TableWriter metas = writer(connection, dialect, "scim_meta",
+                "id", "created", "last_modified", "resource_type");
+        TableWriter ids = writer(connection, dialect, "scim_id", "internal_id", "id", "external_id", "meta");
+        TableWriter names = writer(connection, dialect, "scim_name", "id", "family_name", "formatted", "given_name");
+        TableWriter scimGroups = writer(connection, dialect, "scim_group", "internal_id", "display_name");
+        TableWriter scimUsers = writer(connection, dialect, "scim_user", "internal_id", "user_name",
+                "display_name", "nick_name", "active", "locale", "preferred_language", "timezone", "title",
+                "password", "name");
+        TableWriter emails = writer(connection, dialect, "scim_email",
+                "multi_value_id", "value", "is_primary", "type", "user_internal_id");
+        TableWriter extensionValues = writer(connection, dialect, "scim_extension_field_value",
+                "internal_id", "value", "extension_field", "user_internal_id");
+        TableWriter members = writer(connection, dialect, "scim_group_members", "groups", "members");
+        // in the order of the foreign keys
+        List<TableWriter> writers = Arrays.asList(extensions, extensionFields, metas, ids, names, scimGroups,
+                scimUsers, emails, extensionValues, members);
+
+        try {
+            long extensionId = FIRST_INTERNAL_ID;
+            extensions.add(extensionId, EXTENSION_URN);
+            for (int field = 0; field < EXTENSION_FIELDS.length; field++) {
+                extensionFields.add(extensionId + 1 + field, false, EXTENSION_FIELDS[field],
+                        EXTENSION_FIELD_TYPES[field], extensionId);
+            }
+
+            for (int group = 0; group < groups; group++) {
+                Random random = random("group", group);
+                long internalId = groupInternalId(group);
+                addMeta(metas, random, internalId, "Group");
+                ids.add(internalId, groupId(group), "ext_" + groupName(group), internalId);
+                scimGroups.add(internalId, groupName(group));
+                if ((group + 1) % CHUNK_SIZE == 0) {
+                    flush(connection, writers);
+                }
+            }
+            flush(connection, writers);
+
+            long multiValueId = FIRST_INTERNAL_ID;
+            SimpleDateFormat birthdayFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            birthdayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            for (int user = 0; user < users; user++) {
+                Random random = random("user", user);
+                long internalId = userInternalId(user);
+                String givenName = GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)];
+                String familyName = FAMILY_NAMES[random.nextInt(FAMILY_NAMES.length)];
+                String locale = LOCALES[random.nextInt(LOCALES.length)];
+
+                addMeta(metas, random, internalId, "User");
+                ids.add(internalId, userId(user), "ext_" + userName(user), internalId);
+                names.add(internalId, familyName, givenName + " " + familyName, givenName);
+                scimUsers.add(internalId, userName(user), givenName + " " + familyName, givenName.toLowerCase(Locale.ENGLISH),
+                        random.nextInt(10) > 0, locale, locale.substring(0, 2),
+                        TIMEZONES[random.nextInt(TIMEZONES.length)], random.nextBoolean() ? "Dr." : null,
+                        PASSWORD_HASH, internalId);
+
+                int emailCount = 1 + random.nextInt(MAX_EMAILS);
+                for (int email = 0; email < emailCount; email++) {
+                    emails.add(multiValueId++, userName(user) + "@" + EMAIL_TYPES[email] + ".example.com",
+                            email == 0, EMAIL_TYPES[email], internalId);
+                }
+
+                if (random.nextBoolean()) {
+                    long birthday = FIRST_CREATED - TimeUnit.DAYS.toMillis(18 * 365 + random.nextInt(50 * 365));
+                    long age = TimeUnit.MILLISECONDS.toDays(FIRST_CREATED - birthday) / 365;
+                    String[] values = {GENDERS[random.nextInt(GENDERS.length)], String.valueOf(age),
+                            String.valueOf(random.nextBoolean()), birthdayFormat.format(new Date(birthday))};
+                    for (int field = 0; field < values.length; field++) {
+                        extensionValues.add(multiValueId++, values[field], extensionId + 1 + field, internalId);
+                    }
+                }
+
+                int membershipCount = random.nextInt(MAX_MEMBERSHIPS + 1);
+                Set<Integer> memberships = new HashSet<>();
+                for (int membership = 0; membership < membershipCount; membership++) {
+                    int group = random.nextInt(groups);
+                    if (memberships.add(group)) {
+                        members.add(groupInternalId(group), internalId);
+                    }
+                }
+
+                if ((user + 1) % CHUNK_SIZE == 0) {
+                    flush(connection, writers);
+                }
+            }
+            flush(connection, writers);
+        } finally {
+            for (TableWriter writer : writers) {
+                writer.close();
+            }
+        }
+    }
+
+    private void addMeta(TableWriter metas, Random random, long id, String resourceType) throws SQLException {
+        long created = FIRST_CREATED + (long) (random.nextDouble() * CREATED_RANGE);
+        long lastModified = created + (long) (random.nextDouble() * MODIFIED_RANGE);
+        metas.add(id, new Timestamp(created), new Timestamp(lastModified), resourceType);
+    }
+
+    private void flush(Connection connection, List<TableWriter> writers) throws SQLException {
+        for (TableWriter writer : writers) {
+            writer.flush();
+        }
+        connection.commit();
+    }
+
+    private long groupInternalId(int group) {
+        return FIRST_INTERNAL_ID + EXTENSION_FIELDS.length + 1 + group;
+    }
+
+    private long userInternalId(int user) {
+        return groupInternalId(groups) + user;
+    }
+
+    private Random random(String kind, int index) {
+        return new Random((seed * 31 + kind.hashCode()) ^ (index * 0x9E3779B97F4A7C15L));
+    }
+
+    private String uuid(String kind, int index) {
+        return UUID.nameUUIDFromBytes((seed + ":" + kind + ":" + index).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static TableWriter writer(Connection connection, Dialect dialect, String table, String... columns)
+            throws SQLException {
+        return dialect == Dialect.POSTGRESQL
+                ? new CopyWriter(connection.unwrap(PGConnection.class).getCopyAPI(), table, columns)
+                : new BatchWriter(connection, table, columns);
+    }
+
+    private interface TableWriter {
+
+        void add(Object... values) throws SQLException;
+
+        void flush() throws SQLException;
+
+        void close() throws SQLException;
+    }
+
+    /**
+     * Streams the rows with {@code COPY ... FROM STDIN} in PostgreSQL's text format.
+     */
+    private static final class CopyWriter implements TableWriter {
+
+        private final CopyManager copyManager;
+        private final String sql;
+        private final StringBuilder rows = new StringBuilder();
+
+        private CopyWriter(CopyManager copyManager, String table, String... columns) {
+            this.copyManager = copyManager;
+            this.sql = "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN";
+        }
+
+        @Override
+        public void add(Object... values) {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    rows.append('\t');
+                }
+                if (values[i] == null) {
+                    rows.append("\\N");
+                } else {
+                    escape(String.valueOf(values[i]));
+                }
+            }
+            rows.append('\n');
+        }
+
+        private void escape(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\\':
+                        rows.append("\\\\");
+                        break;
+                    case '\t':
+                        rows.append("\\t");
+                        break;
+                    case '\n':
+                        rows.append("\\n");
+                        break;
+                    case '\r':
+                        rows.append("\\r");
+                        break;
+                    default:
+                        rows.append(c);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws SQLException {
+            if (rows.length() == 0) {
+                return;
+            }
+            try {
+                copyManager.copyIn(sql, new StringReader(rows.toString()));
+            } catch (IOException e) {
+                throw new SQLException("Unable to execute " + sql, e);
+            }
+            rows.setLength(0);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Adds the rows to a JDBC batch. Set {@code rewriteBatchedStatements} to let the MySQL driver send them as
+     * multi-row inserts.
+     */
+    private static final class BatchWriter implements TableWriter {
+
+        private final PreparedStatement statement;
+        private int pending;
+
+        private BatchWriter(Connection connection, String table, String... columns) throws SQLException {
+            List<String> placeholders = new ArrayList<>();
+            for (String ignored : columns) {
+                placeholders.add("?");
+            }
+            this.statement = connection.prepareStatement("INSERT INTO " + table
+                    + " (" + String.join(", ", columns) + ") VALUES (" + String.join(", ", placeholders) + ")");
+        }
+
+        @Override
+        public void add(Object... values) throws SQLException {
+            for (int i = 0; i < values.length; i++) {
+                statement.setObject(i + 1, values[i]);
+            }
+            statement.addBatch();
+            pending++;
+        }
+
+        @Override
+        public void flush() throws SQLException {
+            if (pending > 0) {
+                statement.executeBatch();
+                pending = 0;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            statement.close();
+        }
+    }
+}
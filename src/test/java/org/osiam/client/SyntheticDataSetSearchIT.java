@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osiam.client.oauth.Scope;
+import org.osiam.client.query.Query;
+import org.osiam.client.query.QueryBuilder;
+import org.osiam.resources.scim.Group;
+import org.osiam.resources.scim.SCIMSearchResult;
+import org.osiam.resources.scim.User;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Searches, sorts and pages through a synthetic data set. Only runs if {@code -Ddataset.scale} is set.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("/context.xml")
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        ImmutableDataSetTestExecutionListener.class})
+@ImmutableDataSet(value = "/database_seed_minimal.xml", synthetic = true)
+public class SyntheticDataSetSearchIT extends AbstractIntegrationTestBase {
+
+    private static final int HEAP_SAMPLES = 10;
+    private static final long MAX_HEAP_GROWTH = 16 * 1024 * 1024;
+
+    private final SyntheticDataSet dataSet = new SyntheticDataSet(SyntheticDataSet.scale());
+
+    @Before
+    public void setUp() {
+        assumeTrue(dataSet.getUsers() > 0);
+        accessToken = ACCESS_TOKEN_CACHE.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
+    }
+
+    @Test
+    public void total_results_include_all_generated_users() {
+        Query query = new QueryBuilder().count(1).build();
+
+        SCIMSearchResult<User> result = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+
+        assertThat(result.getTotalResults(), is(equalTo(dataSet.getUsers() + 1L)));
+    }
+
+    @Test
+    public void total_results_include_all_generated_groups() {
+        Query query = new QueryBuilder().count(1).build();
+
+        SCIMSearchResult<Group> result = OSIAM_CONNECTOR.searchGroups(query, accessToken);
+
+        assertThat(result.getTotalResults(), is(equalTo((long) dataSet.getGroups())));
+    }
+
+    @Test
+    public void search_for_a_generated_user_by_user_name() {
+        int index = dataSet.getUsers() / 2;
+        Query query = new QueryBuilder().filter("userName eq \"" + dataSet.userName(index) + "\"").build();
+
+        SCIMSearchResult<User> result = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+
+        assertThat(result.getResources(), hasSize(1));
+        assertThat(result.getResources().get(0).getId(), is(equalTo(dataSet.userId(index))));
+    }
+
+    @Test
+    public void last_page_sorted_by_user_name_contains_the_last_generated_user() {
+        // marissa sorts before all generated users
+        Query query = new QueryBuilder()
+                .ascending("userName")
+                .startIndex(dataSet.getUsers() + 1)
+                .count(10)
+                .build();
+
+        SCIMSearchResult<User> result = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+
+        assertThat(result.getResources(), hasSize(1));
+        assertThat(result.getResources().get(0).getUserName(), is(equalTo(dataSet.userName(dataSet.getUsers() - 1))));
+    }
+
+    @Test
+    public void generated_users_can_be_paged_through() {
+        Query query = new QueryBuilder()
+                .filter("userName sw \"synthetic\"")
+                .ascending("userName")
+                .count(100)
+                .build();
+        int expectedIndex = 0;
+
+        try (PagedSearch<User> users = PagedSearch.users(OSIAM_CONNECTOR, query, accessToken)) {
+            while (users.hasNext() && expectedIndex < 1000) {
+                assertThat(users.next().getUserName(), is(equalTo(dataSet.userName(expectedIndex++))));
+            }
+        }
+        assertThat(expectedIndex, is(equalTo(Math.min(dataSet.getUsers(), 1000))));
+    }
+
+    @Test
+    public void paging_through_all_generated_users_uses_constant_heap() {
+        int pageSize = 100;
+        assumeTrue(dataSet.getUsers() >= HEAP_SAMPLES * 10 * pageSize);
+        Query query = new QueryBuilder()
+                .filter("userName sw \"synthetic\"")
+                .ascending("userName")
+                .count(pageSize)
+                .build();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        List<Long> usedHeap = new ArrayList<>();
+        int users = 0;
+
+        try (PagedSearch<User> search = PagedSearch.users(OSIAM_CONNECTOR, query, accessToken)) {
+            while (search.hasNext()) {
+                search.next();
+                if (++users % (dataSet.getUsers() / HEAP_SAMPLES) == 0) {
+                    memory.gc();
+                    usedHeap.add(memory.getHeapMemoryUsage().getUsed());
+                }
+            }
+        }
+
+        assertThat(users, is(equalTo(dataSet.getUsers())));
+        // from the first to the last tenth of the users, the retained heap must not grow with the number of pages
+        long growth = usedHeap.get(usedHeap.size() - 1) - usedHeap.get(0);
+        assertThat("used heap after every tenth of the users: " + usedHeap, growth, is(lessThan(MAX_HEAP_GROWTH)));
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.osiam.client.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osiam.resources.helper.UserDeserializer;
+import org.osiam.resources.scim.Address;
+import org.osiam.resources.scim.Email;
+import org.osiam.resources.scim.Extension;
+import org.osiam.resources.scim.Group;
+import org.osiam.resources.scim.Im;
+import org.osiam.resources.scim.MemberRef;
+import org.osiam.resources.scim.Name;
+import org.osiam.resources.scim.PhoneNumber;
+import org.osiam.resources.scim.Role;
+import org.osiam.resources.scim.SCIMSearchResult;
+import org.osiam.resources.scim.User;
+import org.osiam.resources.scim.X509Certificate;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast the SCIM resources of connector4java are serialized to and deserialized from JSON with the same
+ * Jackson configuration the connector uses. Run it with {@code ./mvnw test-compile exec:exec -P benchmark}, which
+ * also reports the allocations per operation ({@code gc.alloc.rate.norm}).
+ * <p>
+ * {@code size} is the number of values of every multi-valued attribute of a user, the number of members of a group
+ * and the number of users in a search result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final String EXTENSION_URN = "extension";
+    private static final String SEARCH_RESULT_SCHEMA = "urn:ietf:params:scim:api:messages:2.0:ListResponse";
+
+    @Param({"1", "10", "100"})
+    private int size;
+
+    private ObjectMapper mapper;
+    private JavaType searchResultType;
+
+    private User user;
+    private String userJson;
+    private Group group;
+    private String groupJson;
+    private SCIMSearchResult<User> searchResult;
+    private String searchResultJson;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = new ObjectMapper()
+                .registerModule(new SimpleModule("userDeserializerModule")
+                        .addDeserializer(User.class, new UserDeserializer(User.class)))
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        searchResultType = mapper.getTypeFactory().constructParametricType(SCIMSearchResult.class, User.class);
+
+        user = completeUser(0, size);
+        userJson = mapper.writeValueAsString(user);
+
+        Set<MemberRef> members = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            members.add(new MemberRef.Builder().setValue(UUID.randomUUID().toString()).build());
+        }
+        group = new Group.Builder("group").setExternalId("externalId").setMembers(members).build();
+        groupJson = mapper.writeValueAsString(group);
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            users.add(completeUser(i, 1));
+        }
+        Map<String, Object> searchResultPayload = new LinkedHashMap<>();
+        searchResultPayload.put("schemas", Collections.singletonList(SEARCH_RESULT_SCHEMA));
+        searchResultPayload.put("totalResults", size);
+        searchResultPayload.put("itemsPerPage", size);
+        searchResultPayload.put("startIndex", 1);
+        searchResultPayload.put("Resources", users);
+        searchResultJson = mapper.writeValueAsString(searchResultPayload);
+        searchResult = mapper.readValue(searchResultJson, searchResultType);
+    }
+
+    @Benchmark
+    public String serializeUser() throws IOException {
+        return mapper.writeValueAsString(user);
+    }
+
+    @Benchmark
+    public User deserializeUser() throws IOException {
+        return mapper.readValue(userJson, User.class);
+    }
+
+    @Benchmark
+    public String serializeGroup() throws IOException {
+        return mapper.writeValueAsString(group);
+    }
+
+    @Benchmark
+    public Group deserializeGroup() throws IOException {
+        return mapper.readValue(groupJson, Group.class);
+    }
+
+    @Benchmark
+    public String serializeSearchResult() throws IOException {
+        return mapper.writeValueAsString(searchResult);
+    }
+
+    @Benchmark
+    public SCIMSearchResult<User> deserializeSearchResult() throws IOException {
+        return mapper.readValue(searchResultJson, searchResultType);
+    }
+
+    /**
+     * Builds a user with all attributes, like {@code CompleteUserIT} does, and the given number of values for every
+     * multi-valued attribute.
+     */
+    private static User completeUser(int index, int values) {
+        User.Builder builder = new User.Builder("complete_user_" + index)
+                .setActive(true)
+                .setDisplayName("displayName")
+                .setExternalId("externalId" + index)
+                .setLocale("de_DE")
+                .setName(new Name.Builder()
+                        .setFamilyName("Simpson")
+                        .setFormatted("formatted")
+                        .setGivenName("Homer")
+                        .setHonorificPrefix("Dr.")
+                        .setHonorificSuffix("Mr.")
+                        .setMiddleName("J")
+                        .build())
+                .setNickName("nickname")
+                .setPreferredLanguage("german")
+                .setProfileUrl("/user/username")
+                .setTimezone("DE")
+                .setTitle("title")
+                .addExtension(new Extension.Builder(EXTENSION_URN)
+                        .setField("gender", "female")
+                        .setField("age", new BigInteger("22"))
+                        .build());
+        builder.setId(UUID.randomUUID().toString());
+        List<Address> addresses = new ArrayList<>();
+        List<Email> emails = new ArrayList<>();
+        List<Im> ims = new ArrayList<>();
+        List<PhoneNumber> phoneNumbers = new ArrayList<>();
+        List<Role> roles = new ArrayList<>();
+        List<X509Certificate> x509Certificates = new ArrayList<>();
+        for (int i = 0; i < values; i++) {
+            addresses.add(new Address.Builder()
+                    .setCountry("USA")
+                    .setFormatted("formattedAddress")
+                    .setLocality("Houston")
+                    .setPostalCode("ab5781")
+                    .setPrimary(i == 0)
+                    .setRegion("Texas")
+                    .setStreetAddress("Main Street. " + i)
+                    .setType(Address.Type.HOME)
+                    .build());
+            emails.add(new Email.Builder()
+                    .setPrimary(i == 0)
+                    .setValue("user" + index + "." + i + "@example.com")
+                    .setType(Email.Type.HOME)
+                    .build());
+            ims.add(new Im.Builder()
+                    .setType(Im.Type.GTALK)
+                    .setValue("gtalk" + i)
+                    .build());
+            phoneNumbers.add(new PhoneNumber.Builder()
+                    .setType(PhoneNumber.Type.WORK)
+                    .setValue("030123456" + i)
+                    .build());
+            roles.add(new Role.Builder()
+                    .setValue("role" + i)
+                    .build());
+            x509Certificates.add(new X509Certificate.Builder()
+                    .setValue("x509Certificate" + i)
+                    .build());
+        }
+        return builder.addAddresses(addresses)
+                .addEmails(emails)
+                .addIms(ims)
+                .addPhoneNumbers(phoneNumbers)
+                .addRoles(roles)
+                .addX509Certificates(x509Certificates)
+                .build();
+    }
+}
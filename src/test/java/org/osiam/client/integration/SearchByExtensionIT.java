@@ -31,6 +31,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.osiam.client.AbstractIntegrationTestBase;
+import org.osiam.client.QueryPlanTestExecutionListener;
 import org.osiam.client.oauth.Scope;
 import org.osiam.client.query.Query;
 import org.osiam.client.query.QueryBuilder;
@@ -48,7 +49,8 @@ import com.github.springtestdbunit.annotation.DatabaseTearDown;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration("/context.xml")
-@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class, DbUnitTestExecutionListener.class })
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class, DbUnitTestExecutionListener.class,
+        QueryPlanTestExecutionListener.class })
 @DatabaseTearDown(value = "/database_tear_down.xml", type = DatabaseOperation.DELETE_ALL)
 public class SearchByExtensionIT extends AbstractIntegrationTestBase {
 
@@ -63,7 +65,7 @@ public class SearchByExtensionIT extends AbstractIntegrationTestBase {
         Query query = new QueryBuilder().filter(
                 "userName co \"existing\" AND extension:gender eq \"male\" AND extension:birthday pr").build();
 
-        SCIMSearchResult<User> result = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        SCIMSearchResult<User> result = searchUsers(query);
 
         assertThat(result.getTotalResults(), is(1L));
     }
@@ -72,7 +74,7 @@ public class SearchByExtensionIT extends AbstractIntegrationTestBase {
     @DatabaseSetup(value = "/database_seeds/SearchByExtensionIT/search_by_extensions_with_not.xml")
     public void search_user_with_not_returns_right_user() {
         Query query = new QueryBuilder().filter("not (extension:gender eq \"male\")").build();
-        SCIMSearchResult<User> queryResult = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        SCIMSearchResult<User> queryResult = searchUsers(query);
         assertThat(queryResult.getTotalResults(), is(equalTo(1L)));
         assertThat(queryResult.getResources().get(0).getUserName(), is(equalTo("existing3")));
     }
@@ -82,7 +84,7 @@ public class SearchByExtensionIT extends AbstractIntegrationTestBase {
     public void search_user_with_not_and_present_returns_right_user() {
         Query query = new QueryBuilder().filter("not (extension:gender pr)")
                 .ascending("username").build();
-        SCIMSearchResult<User> queryResult = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        SCIMSearchResult<User> queryResult = searchUsers(query);
         assertThat(queryResult.getTotalResults(), is(equalTo(2L)));
         assertThat(queryResult.getResources().get(0).getUserName(), is(equalTo("existing2")));
         assertThat(queryResult.getResources().get(1).getUserName(), is(equalTo("marissa")));
@@ -93,7 +95,7 @@ public class SearchByExtensionIT extends AbstractIntegrationTestBase {
     public void search_user_with_not_and_present_and_equal_field_returns_right_user() {
         Query query = new QueryBuilder().filter("not (extension:gender pr and extension:gender eq \"male\")")
                 .ascending("username").build();
-        SCIMSearchResult<User> queryResult = OSIAM_CONNECTOR.searchUsers(query, accessToken);
+        SCIMSearchResult<User> queryResult = searchUsers(query);
         assertThat(queryResult.getTotalResults(), is(equalTo(3L)));
         assertThat(queryResult.getResources().get(0).getUserName(), is(equalTo("existing2")));
         assertThat(queryResult.getResources().get(1).getUserName(), is(equalTo("existing3")));
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.osiam.client.load;
+
+import com.github.springtestdbunit.annotation.DatabaseOperation;
+import com.github.springtestdbunit.dataset.FlatXmlDataSetLoader;
+import org.dbunit.database.IDatabaseConnection;
+import org.osiam.client.AccessTokenCache;
+import org.osiam.client.DataSets;
+import org.osiam.client.DatabaseResetOperationLookup;
+import org.osiam.client.OsiamConnector;
+import org.osiam.client.PooledHttpClient;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * Replays the integration test scenarios against a running OSIAM and reports throughput, latency percentiles and
+ * errors per operation. Run it with {@code ./mvnw verify -P load}.
+ * <p>
+ * The load is configured with system properties:
+ * <ul>
+ * <li>{@code load.scenarios}: comma separated {@link Scenario scenarios}, default: all</li>
+ * <li>{@code load.users}: number of concurrent virtual users, default: 10</li>
+ * <li>{@code load.rate}: scenario starts per second in open-loop mode, 0 for a closed loop in which every virtual user
+ * starts the next scenario as soon as the last one has finished, default: 0</li>
+ * <li>{@code load.duration}: duration of the run in seconds, default: 60</li>
+ * <li>{@code load.threads}: {@link ClientThreads threads} the virtual users run on, {@code platform} or
+ * {@code virtual}, default: {@code platform}. With virtual threads, carrier thread pinning is reported as well.</li>
+ * <li>{@code load.seed}: data set that is seeded before the run, default: {@code /database_seed.xml}</li>
+ * <li>{@code load.report}: file the report is written to, in addition to stdout, default:
+ * {@code target/load-report.txt}</li>
+ * </ul>
+ * The SCIM requests are sent over the connection pool of a {@link PooledHttpClient}, which is configured with the
+ * {@code connector.pool.*} properties. The report includes the number of connections it had to open.
+ */
+public class LoadTest {
+
+    private static final String OSIAM_ENDPOINT = System.getProperty("osiam.test.host", "http://localhost:8180");
+    private static final String CLIENT_ID = "example-client";
+    private static final String CLIENT_SECRET = "secret";
+
+    private final List<Scenario> scenarios;
+    private final int users;
+    private final double rate;
+    private final long durationNanos;
+    private final ClientThreads clientThreads;
+    private final Semaphore freeUsers;
+    private final PooledHttpClient httpClient;
+    private final Scenario.Context context;
+    private final OperationMetrics metrics = new OperationMetrics();
+    private final Map<Scenario, AtomicInteger> runningScenarios = new ConcurrentHashMap<>();
+
+    LoadTest(List<Scenario> scenarios, int users, double rate, long durationNanos, ClientThreads clientThreads,
+             OsiamConnector connector, PooledHttpClient httpClient) {
+        this.scenarios = scenarios;
+        this.users = users;
+        this.rate = rate;
+        this.durationNanos = durationNanos;
+        this.clientThreads = clientThreads;
+        this.freeUsers = new Semaphore(users);
+        this.httpClient = httpClient;
+        this.context = new Scenario.Context(connector, httpClient, new AccessTokenCache(connector, CLIENT_ID),
+                metrics);
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Scenario> scenarios = Arrays.stream(System.getProperty("load.scenarios",
+                Arrays.stream(Scenario.values()).map(Scenario::name).collect(Collectors.joining(","))).split(","))
+                .map(String::trim)
+                .map(name -> Scenario.valueOf(name.toUpperCase(Locale.ENGLISH)))
+                .collect(Collectors.toList());
+        int users = Integer.getInteger("load.users", 10);
+        double rate = Double.parseDouble(System.getProperty("load.rate", "0"));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.duration", 60));
+        ClientThreads clientThreads = ClientThreads.valueOf(
+                System.getProperty("load.threads", "platform").toUpperCase(Locale.ENGLISH));
+        Path report = Paths.get(System.getProperty("load.report", "target/load-report.txt"));
+
+        OsiamConnector.setConnectTimeout(Integer.parseInt(System.getProperty("connector.timeout", "-1")));
+        OsiamConnector.setReadTimeout(Integer.parseInt(System.getProperty("connector.timeout", "-1")));
+        OsiamConnector connector = new OsiamConnector.Builder()
+                .withEndpoint(OSIAM_ENDPOINT)
+                .setClientId(CLIENT_ID)
+                .setClientSecret(CLIENT_SECRET)
+                .build();
+
+        try (ClassPathXmlApplicationContext applicationContext = new ClassPathXmlApplicationContext("context.xml");
+             PooledHttpClient httpClient = new PooledHttpClient.Builder(OSIAM_ENDPOINT).build()) {
+            IDatabaseConnection connection = applicationContext.getBean("dbUnitDatabaseConnection",
+                    IDatabaseConnection.class);
+            DatabaseResetOperationLookup databaseOperations = new DatabaseResetOperationLookup();
+            FlatXmlDataSetLoader dataSetLoader = new FlatXmlDataSetLoader();
+            try {
+                String seed = System.getProperty("load.seed", "/database_seed.xml");
+                databaseOperations.get(DatabaseOperation.CLEAN_INSERT).execute(connection,
+                        dataSetLoader.loadDataSet(LoadTest.class, seed));
+
+                LoadTest loadTest = new LoadTest(scenarios, users, rate, durationNanos, clientThreads, connector,
+                        httpClient);
+                PinningMonitor pinningMonitor = clientThreads == ClientThreads.VIRTUAL ? new PinningMonitor() : null;
+                long elapsedNanos;
+                try {
+                    elapsedNanos = loadTest.run();
+                } finally {
+                    if (pinningMonitor != null) {
+                        pinningMonitor.close();
+                    }
+                }
+
+                System.out.printf("%d virtual users on %s threads, %s, %d s, scenarios %s%n%n", users,
+                        clientThreads.name().toLowerCase(Locale.ENGLISH),
+                        rate > 0 ? rate + " scenarios/s (open loop)" : "closed loop",
+                        TimeUnit.NANOSECONDS.toSeconds(elapsedNanos), scenarios);
+                loadTest.report(System.out, elapsedNanos, pinningMonitor);
+                if (report.toAbsolutePath().getParent() != null) {
+                    Files.createDirectories(report.toAbsolutePath().getParent());
+                }
+                try (PrintStream out = new PrintStream(new FileOutputStream(report.toFile()), true,
+                        StandardCharsets.UTF_8.name())) {
+                    loadTest.report(out, elapsedNanos, pinningMonitor);
+                }
+            } finally {
+                // not looked up, as the snapshot reset skips it and the data of the run would be left behind
+                org.dbunit.operation.DatabaseOperation.DELETE_ALL.execute(connection,
+                        dataSetLoader.loadDataSet(LoadTest.class, DataSets.TEAR_DOWN));
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the load and returns the elapsed time in nanoseconds.
+     *
+     * @throws IllegalStateException if scenarios are still running one minute after the end of the run
+     */
+    long run() throws InterruptedException {
+        ExecutorService virtualUsers = clientThreads.newExecutor(users);
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        try {
+            if (rate > 0) {
+                runOpenLoop(virtualUsers, start, deadline);
+            } else {
+                runClosedLoop(virtualUsers, deadline);
+            }
+        } finally {
+            virtualUsers.shutdown();
+            if (!virtualUsers.awaitTermination(1, TimeUnit.MINUTES)) {
+                virtualUsers.shutdownNow();
+                virtualUsers.awaitTermination(10, TimeUnit.SECONDS);
+                throw new IllegalStateException("Scenarios still running after the end of the run: "
+                        + runningScenarios.entrySet().stream()
+                        .filter(running -> running.getValue().get() > 0)
+                        .map(running -> running.getKey() + " (" + running.getValue() + ")")
+                        .collect(Collectors.joining(", ")));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void report(PrintStream out, long elapsedNanos, PinningMonitor pinningMonitor) {
+        metrics.report(out, elapsedNanos);
+        out.printf("%n%d connections opened%n", httpClient.getOpenedConnections());
+        if (pinningMonitor != null) {
+            pinningMonitor.report(out);
+        }
+    }
+
+    /**
+     * Starts scenarios at a fixed rate, independent of how fast the server responds. If all virtual users are busy,
+     * the scenario waits for the next free one and the waiting time is part of the measured latency.
+     */
+    private void runOpenLoop(ExecutorService virtualUsers, long start, long deadline) {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        for (long intendedStart = start; intendedStart < deadline; intendedStart += intervalNanos) {
+            long delay = intendedStart - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            long scheduledStart = intendedStart;
+            Scenario scenario = nextScenario();
+            virtualUsers.execute(() -> {
+                // virtual threads are started per scenario, so the number of busy users is limited here
+                freeUsers.acquireUninterruptibly();
+                try {
+                    runScenario(scenario, scheduledStart);
+                } finally {
+                    freeUsers.release();
+                }
+            });
+        }
+    }
+
+    private void runClosedLoop(ExecutorService virtualUsers, long deadline) {
+        List<Runnable> loops = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            loops.add(() -> {
+                while (System.nanoTime() < deadline) {
+                    runScenario(nextScenario(), System.nanoTime());
+                }
+            });
+        }
+        loops.forEach(virtualUsers::execute);
+    }
+
+    private void runScenario(Scenario scenario, long intendedStartNanos) {
+        AtomicInteger running = runningScenarios.computeIfAbsent(scenario, key -> new AtomicInteger());
+        running.incrementAndGet();
+        try {
+            scenario.run(context, intendedStartNanos);
+        } catch (RuntimeException e) {
+            // already counted as an error of the failing operation
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    private Scenario nextScenario() {
+        return scenarios.get(ThreadLocalRandom.current().nextInt(scenarios.size()));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.osiam.client.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Records the latency and the errors of every operation executed by a {@link LoadTest}.
+ */
+public class OperationMetrics {
+
+    private static final long HIGHEST_TRACKABLE_LATENCY = TimeUnit.MINUTES.toNanos(1);
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    /**
+     * Executes and times the given operation. Errors are counted and rethrown, so that the remaining steps of the
+     * scenario are skipped.
+     */
+    public <T> T time(String name, Supplier<T> operation) {
+        return time(name, System.nanoTime(), operation);
+    }
+
+    /**
+     * Executes and times the given operation, taking the latency from the time it was supposed to start. This
+     * includes the time a request had to wait for a free virtual user in the open-loop mode.
+     */
+    public <T> T time(String name, long intendedStartNanos, Supplier<T> operation) {
+        Operation metrics = operations.computeIfAbsent(name, key -> new Operation());
+        try {
+            T result = operation.get();
+            metrics.latencies.recordValue(Math.min(System.nanoTime() - intendedStartNanos, HIGHEST_TRACKABLE_LATENCY));
+            return result;
+        } catch (RuntimeException e) {
+            metrics.errors.increment();
+            throw e;
+        }
+    }
+
+    public void report(PrintStream out, long elapsedNanos) {
+        double elapsedSeconds = (double) elapsedNanos / TimeUnit.SECONDS.toNanos(1);
+        out.printf("%-24s %10s %10s %10s %10s %10s %10s %8s%n",
+                "operation", "count", "ops/s", "p50 [ms]", "p99 [ms]", "p999 [ms]", "max [ms]", "errors");
+        operations.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> {
+                    Histogram latencies = entry.getValue().latencies;
+                    out.printf("%-24s %10d %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n",
+                            entry.getKey(),
+                            latencies.getTotalCount(),
+                            latencies.getTotalCount() / elapsedSeconds,
+                            millis(latencies.getValueAtPercentile(50)),
+                            millis(latencies.getValueAtPercentile(99)),
+                            millis(latencies.getValueAtPercentile(99.9)),
+                            millis(latencies.getMaxValue()),
+                            entry.getValue().errors.sum());
+                });
+    }
+
+    private static double millis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static class Operation {
+
+        private final Histogram latencies = new ConcurrentHistogram(HIGHEST_TRACKABLE_LATENCY, 3);
+        private final LongAdder errors = new LongAdder();
+    }
+}
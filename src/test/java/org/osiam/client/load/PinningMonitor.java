@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.osiam.client.load;
+
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Records the {@code jdk.VirtualThreadPinned} events of Java Flight Recorder, which are emitted whenever a virtual
+ * thread blocks while it can't be unmounted from its carrier thread, e.g. inside a {@code synchronized} block of the
+ * HTTP client. The events are grouped by the first frame outside of the JDK.
+ * <p>
+ * The event streaming API exists since Java 14 and pinning events since Java 21, so it is used reflectively.
+ */
+class PinningMonitor implements AutoCloseable {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int REPORTED_LOCATIONS = 10;
+
+    private final Map<String, Location> locations = new ConcurrentHashMap<>();
+    private final LongAdder events = new LongAdder();
+    private final AutoCloseable recordingStream;
+
+    PinningMonitor() {
+        try {
+            Class<?> recordingStreamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            Class<?> eventSettingsClass = Class.forName("jdk.jfr.EventSettings");
+            Object stream = recordingStreamClass.getConstructor().newInstance();
+            Object settings = recordingStreamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT);
+            eventSettingsClass.getMethod("withThreshold", Duration.class).invoke(settings, Duration.ZERO);
+            eventSettingsClass.getMethod("withStackTrace").invoke(settings);
+            Consumer<Object> handler = this::record;
+            recordingStreamClass.getMethod("onEvent", String.class, Consumer.class)
+                    .invoke(stream, PINNED_EVENT, handler);
+            recordingStreamClass.getMethod("startAsync").invoke(stream);
+            recordingStream = (AutoCloseable) stream;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Pinning events need Java 21 or later, but this is Java "
+                    + System.getProperty("java.version"), e);
+        }
+    }
+
+    void report(PrintStream out) {
+        out.printf("%n%d carrier thread pinning events%n", events.sum());
+        if (locations.isEmpty()) {
+            return;
+        }
+        out.printf("%-100s %8s %12s%n", "pinned at", "count", "total [ms]");
+        locations.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().count.sum(), a.getValue().count.sum()))
+                .limit(REPORTED_LOCATIONS)
+                .forEach(entry -> out.printf("%-100s %8d %12.2f%n", entry.getKey(), entry.getValue().count.sum(),
+                        entry.getValue().nanos.sum() / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+
+    @Override
+    public void close() throws Exception {
+        recordingStream.close();
+    }
+
+    private void record(Object event) {
+        events.increment();
+        try {
+            Duration duration = (Duration) invoke(event, "getDuration");
+            Location location = locations.computeIfAbsent(location(event), key -> new Location());
+            location.count.increment();
+            location.nanos.add(duration.toNanos());
+        } catch (ReflectiveOperationException e) {
+            locations.computeIfAbsent("unknown", key -> new Location()).count.increment();
+        }
+    }
+
+    private String location(Object event) throws ReflectiveOperationException {
+        Object stackTrace = invoke(event, "getStackTrace");
+        if (stackTrace == null) {
+            return "unknown";
+        }
+        List<?> frames = (List<?>) invoke(stackTrace, "getFrames");
+        String firstFrame = null;
+        for (Object frame : frames) {
+            Object method = invoke(frame, "getMethod");
+            String className = (String) invoke(invoke(method, "getType"), "getName");
+            String description = className + "." + invoke(method, "getName") + ":" + invoke(frame, "getLineNumber");
+            if (firstFrame == null) {
+                firstFrame = description;
+            }
+            if (!className.startsWith("java.") && !className.startsWith("jdk.") && !className.startsWith("sun.")) {
+                return description;
+            }
+        }
+        return firstFrame == null ? "unknown" : firstFrame;
+    }
+
+    private static Object invoke(Object target, String methodName) throws ReflectiveOperationException {
+        Method method = publicMethod(target.getClass(), methodName);
+        return method.invoke(target);
+    }
+
+    /**
+     * Finds the method on a public class or interface, as the classes of the recorded objects are not accessible.
+     */
+    private static Method publicMethod(Class<?> type, String methodName) throws NoSuchMethodException {
+        for (Class<?> candidate = type; candidate != null; candidate = candidate.getSuperclass()) {
+            if (Modifier.isPublic(candidate.getModifiers())) {
+                return candidate.getMethod(methodName);
+            }
+        }
+        return type.getMethod(methodName);
+    }
+
+    private static final class Location {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2013 tarent AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.osiam.client.load;
+
+import org.osiam.client.AccessTokenCache;
+import org.osiam.client.OsiamConnector;
+import org.osiam.client.PooledHttpClient;
+import org.osiam.client.oauth.AccessToken;
+import org.osiam.client.oauth.Scope;
+import org.osiam.client.query.Query;
+import org.osiam.client.query.QueryBuilder;
+import org.osiam.resources.scim.Group;
+import org.osiam.resources.scim.MemberRef;
+import org.osiam.resources.scim.User;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The scenarios a {@link LoadTest} replays, modeled after the corresponding integration tests. Access tokens are
+ * retrieved with the connector, all other requests are sent over the connection pool of a {@link PooledHttpClient}.
+ */
+public enum Scenario {
+
+    /**
+     * A resource owner password credentials grant, as done by the {@code @Before} methods of the integration tests.
+     */
+    LOGIN {
+        @Override
+        void run(Context context, long intendedStartNanos) {
+            context.metrics.time("login", intendedStartNanos,
+                    () -> context.connector.retrieveAccessToken("marissa", "koala", Scope.ADMIN));
+        }
+    },
+
+    /**
+     * One of the user searches of {@code SearchUserServiceIT}.
+     */
+    SEARCH_USERS {
+        private final List<Query> queries = Arrays.asList(
+                new QueryBuilder().filter("userName eq \"bjensen\"").build(),
+                new QueryBuilder().filter("emails.value eq \"bjensen@example.com\"").build(),
+                new QueryBuilder().filter("userName eq \"marissa\" or userName eq \"bjensen\"").build(),
+                new QueryBuilder().filter("groups.display eq \"test_group01\"").build(),
+                new QueryBuilder().filter("meta.created gt \"2011-10-10T00:00:00.000\" and userName eq \"user1\"")
+                        .build(),
+                new QueryBuilder().ascending("userName").build());
+
+        @Override
+        void run(Context context, long intendedStartNanos) {
+            Query query = queries.get(ThreadLocalRandom.current().nextInt(queries.size()));
+            AccessToken accessToken = context.accessToken();
+            context.metrics.time("searchUsers", intendedStartNanos,
+                    () -> context.httpClient.searchUsers(query, accessToken));
+        }
+    },
+
+    /**
+     * Creates, replaces and deletes a user, like {@code EditUserServiceIT} and {@code ReplaceUserServiceIT}.
+     */
+    USER_LIFECYCLE {
+        @Override
+        void run(Context context, long intendedStartNanos) {
+            AccessToken accessToken = context.accessToken();
+            User user = new User.Builder("load-" + UUID.randomUUID()).setPassword("koala").build();
+            User createdUser = context.metrics.time("createUser", intendedStartNanos,
+                    () -> context.httpClient.createUser(user, accessToken));
+            User replacement = new User.Builder(createdUser).setDisplayName("Load Test").build();
+            try {
+                context.metrics.time("replaceUser",
+                        () -> context.httpClient.replaceUser(createdUser.getId(), replacement, accessToken));
+            } finally {
+                context.metrics.time("deleteUser", () -> {
+                    context.httpClient.deleteUser(createdUser.getId(), accessToken);
+                    return null;
+                });
+            }
+        }
+    },
+
+    /**
+     * Adds a user to a group and removes it again, like {@code GroupMembershipIT}.
+     */
+    GROUP_MEMBERSHIP {
+        @Override
+        void run(Context context, long intendedStartNanos) {
+            AccessToken accessToken = context.accessToken();
+            User user = context.metrics.time("createUser", intendedStartNanos, () -> context.httpClient.createUser(
+                    new User.Builder("load-" + UUID.randomUUID()).setPassword("koala").build(), accessToken));
+            Group group = context.metrics.time("createGroup", () -> context.httpClient.createGroup(
+                    new Group.Builder("load-" + UUID.randomUUID()).build(), accessToken));
+            try {
+                Group withMember = new Group.Builder(group)
+                        .addMember(new MemberRef.Builder().setValue(user.getId()).build())
+                        .build();
+                Group updatedGroup = context.metrics.time("addMember",
+                        () -> context.httpClient.replaceGroup(group.getId(), withMember, accessToken));
+                Group withoutMember = new Group.Builder(updatedGroup).removeMembers().build();
+                context.metrics.time("removeMember",
+                        () -> context.httpClient.replaceGroup(group.getId(), withoutMember, accessToken));
+            } finally {
+                context.metrics.time("deleteGroup", () -> {
+                    context.httpClient.deleteGroup(group.getId(), accessToken);
+                    return null;
+                });
+                context.metrics.time("deleteUser", () -> {
+                    context.httpClient.deleteUser(user.getId(), accessToken);
+                    return null;
+                });
+            }
+        }
+    };
+
+    abstract void run(Context context, long intendedStartNanos);
+
+    static class Context {
+
+        private final OsiamConnector connector;
+        private final PooledHttpClient httpClient;
+        private final AccessTokenCache accessTokenCache;
+        private final OperationMetrics metrics;
+
+        Context(OsiamConnector connector, PooledHttpClient httpClient, AccessTokenCache accessTokenCache,
+                OperationMetrics metrics) {
+            this.connector = connector;
+            this.httpClient = httpClient;
+            this.accessTokenCache = accessTokenCache;
+            this.metrics = metrics;
+        }
+
+        private AccessToken accessToken() {
+            return accessTokenCache.retrieveAccessToken("marissa", "koala", Scope.ADMIN);
+        }
+    }
+}
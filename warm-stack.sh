@@ -0,0 +1,166 @@
+#!/bin/bash -e
+#
+# Starts the LDAP, database and OSIAM containers of the `warm` profile and keeps
+# them running after the tests, so that the next run can reuse them.
+#
+# Every container is labelled with a fingerprint of its filtered build context
+# (and of the OSIAM WAR for the OSIAM container). A container is only rebuilt
+# and restarted if its fingerprint has changed, the OSIAM container also if its
+# database or LDAP container has been restarted. Right after a fresh start, the
+# data of the database is dumped inside the database container. A reused
+# database is reset to that dump instead of being restarted.
+#
+# usage: warm-stack.sh start <database> <osiam host> <osiam port> <image prefix> \
+#            <build context dir> <osiam war>
+#        warm-stack.sh stop <database> [<osiam host> <osiam port> <image prefix>]
+
+COMMAND=$1
+DATABASE=$2
+OSIAM_HOST=$3
+OSIAM_PORT=$4
+IMAGE_PREFIX=${5:-integration-tests}
+CONTEXT_DIR=$6
+OSIAM_WAR=$7
+
+PREFIX="${IMAGE_PREFIX}_warm"
+FINGERPRINT_LABEL=org.osiam.integration-tests.fingerprint
+
+case $DATABASE in
+    postgres)
+        DATABASE_PORTS="-p 15432:5432"
+        DUMP=/var/lib/postgresql/warm-stack.dump
+        ;;
+    mysql)
+        DATABASE_PORTS="-p 13306:3306"
+        DUMP=/var/lib/mysql-warm-stack.sql
+        MYSQL="mysql -uroot -pmysql_root_password ong"
+        ;;
+    *)
+        echo "Unsupported database: $DATABASE" >&2
+        exit 1
+        ;;
+esac
+
+fingerprint() {
+    find "$@" -type f | sort | xargs sha256sum | cut -d ' ' -f 1 | sha256sum | cut -d ' ' -f 1
+}
+
+running_fingerprint() {
+    docker inspect -f "{{ if .State.Running }}{{ index .Config.Labels \"$FINGERPRINT_LABEL\" }}{{ end }}" "$1" 2> /dev/null || true
+}
+
+# ensure <name> <fingerprint> <docker run options...>
+# sets RESTARTED to true if the container had to be (re)started
+ensure() {
+    local NAME=$1
+    local FINGERPRINT=$2
+    shift 2
+    if [ "$(running_fingerprint "${PREFIX}_${NAME}")" = "$FINGERPRINT" ]; then
+        echo "Reusing ${PREFIX}_${NAME}"
+        RESTARTED=false
+        return
+    fi
+    echo "Building and starting ${PREFIX}_${NAME}"
+    docker build -q -t "${PREFIX}_${NAME}" "$CONTEXT_DIR/$NAME" > /dev/null
+    docker rm -f "${PREFIX}_${NAME}" > /dev/null 2>&1 || true
+    docker run -d --name "${PREFIX}_${NAME}" --label "$FINGERPRINT_LABEL=$FINGERPRINT" "$@" "${PREFIX}_${NAME}" > /dev/null
+    RESTARTED=true
+}
+
+wait_for_osiam() {
+    local URL="http://${OSIAM_HOST}:${OSIAM_PORT}/login"
+    for ATTEMPT in $(seq 1 90); do
+        if curl -s "$URL" | grep -q form-signin; then
+            return
+        fi
+        sleep 1
+    done
+    echo "OSIAM did not start within 90s" >&2
+    exit 1
+}
+
+dump_database() {
+    case $DATABASE in
+        postgres)
+            docker exec "${PREFIX}_${DATABASE}" pg_dump -U ong --data-only -Fc -f "$DUMP" ong
+            ;;
+        mysql)
+            docker exec "${PREFIX}_${DATABASE}" sh -c "mysqldump -uroot -pmysql_root_password --no-create-info ong > $DUMP"
+            ;;
+    esac
+}
+
+# drops the snapshot tables of -Ddatabase.reset=snapshot, empties all other tables and restores the dump
+reset_database() {
+    case $DATABASE in
+        postgres)
+            docker exec "${PREFIX}_${DATABASE}" psql -q -U ong -d ong -v ON_ERROR_STOP=1 -c "
+                DO \$\$
+                DECLARE
+                    t record;
+                BEGIN
+                    FOR t IN SELECT tablename FROM pg_tables WHERE schemaname = 'public' LOOP
+                        IF t.tablename LIKE 'snap\_%' THEN
+                            EXECUTE 'DROP TABLE ' || quote_ident(t.tablename);
+                        ELSE
+                            EXECUTE 'TRUNCATE TABLE ' || quote_ident(t.tablename) || ' CASCADE';
+                        END IF;
+                    END LOOP;
+                END
+                \$\$;"
+            docker exec "${PREFIX}_${DATABASE}" pg_restore -U ong -d ong --data-only --disable-triggers "$DUMP"
+            ;;
+        mysql)
+            docker exec "${PREFIX}_${DATABASE}" sh -c "
+                { echo 'SET FOREIGN_KEY_CHECKS = 0;';
+                  $MYSQL -N -e \"SELECT CONCAT(IF(table_name LIKE 'snap\\\\_%', 'DROP', 'TRUNCATE'), ' TABLE \\\`', table_name, '\\\`;')
+                                FROM information_schema.tables WHERE table_schema = 'ong'\";
+                  cat $DUMP; } | $MYSQL"
+            ;;
+    esac
+}
+
+start() {
+    ensure ldap "$(fingerprint "$CONTEXT_DIR/ldap")" -p 10389:389
+    local LDAP_RESTARTED=$RESTARTED
+
+    ensure "$DATABASE" "$(fingerprint "$CONTEXT_DIR/$DATABASE")" $DATABASE_PORTS
+    local DATABASE_RESTARTED=$RESTARTED
+
+    cp "$OSIAM_WAR" "$CONTEXT_DIR/osiam/osiam.war"
+    local OSIAM_FINGERPRINT
+    OSIAM_FINGERPRINT=$(fingerprint "$CONTEXT_DIR/osiam")
+    if [ "$LDAP_RESTARTED" = true ] || [ "$DATABASE_RESTARTED" = true ]; then
+        docker rm -f "${PREFIX}_osiam" > /dev/null 2>&1 || true
+    fi
+    ensure osiam "$OSIAM_FINGERPRINT" \
+        --link "${PREFIX}_${DATABASE}:${DATABASE}" \
+        --link "${PREFIX}_ldap:ldap" \
+        -p "${OSIAM_PORT}:${OSIAM_PORT}" -p 8000:8000
+
+    wait_for_osiam
+
+    if [ "$DATABASE_RESTARTED" = true ]; then
+        dump_database
+    else
+        echo "Resetting the database of ${PREFIX}_${DATABASE}"
+        reset_database
+    fi
+}
+
+stop() {
+    docker rm -f "${PREFIX}_osiam" "${PREFIX}_${DATABASE}" "${PREFIX}_ldap" > /dev/null 2>&1 || true
+}
+
+case $COMMAND in
+    start)
+        start
+        ;;
+    stop)
+        stop
+        ;;
+    *)
+        echo "usage: $0 start|stop <database> <osiam host> <osiam port> <image prefix> <build context dir> <osiam war>" >&2
+        exit 1
+        ;;
+esac